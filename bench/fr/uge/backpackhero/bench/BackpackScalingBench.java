@@ -0,0 +1,188 @@
+package fr.uge.backpackhero.bench;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import com.github.forax.zen.ApplicationContext;
+import com.github.forax.zen.Event;
+import com.github.forax.zen.ScreenInfo;
+
+import fr.uge.backpackhero.gui.View;
+import fr.uge.backpackhero.logic.GameState;
+import fr.uge.backpackhero.model.item.Armor;
+import fr.uge.backpackhero.model.item.Weapon;
+import fr.uge.backpackhero.model.level.Position;
+
+/**
+ * Measures how the cost of the backpack operations grows with the size of the
+ * backpack, from the 7x5 backpack of the game to 128x128.
+ * <p>
+ * For each size, the left two thirds of the backpack are unlocked and one cell
+ * out of eight gets a sword, tried at random positions. The operations are
+ * then timed on random positions: placing and removing an item, reading the
+ * item of a cell, unlocking a cell and undoing it, listing the unlockable
+ * cells, computing the legal placements of an item, placing an item at the
+ * first free place, rotating an item and taking a snapshot, and drawing a
+ * frame of the game through {@link View#draw} on an off-screen image. The time
+ * of an operation is the best average of several passes, after a warm-up pass.
+ * <p>
+ * Usage: {@code ant bench-scaling}, or with the classes and the benchmarks on
+ * the class path: {@code java -Djava.awt.headless=true fr.uge.backpackhero.bench.BackpackScalingBench}.
+ *
+ */
+public final class BackpackScalingBench {
+
+    /** Sizes of the backpacks measured, width then height. */
+    private static final int[][] SIZES = { { 7, 5 }, { 16, 16 }, { 32, 32 }, { 64, 64 }, { 128, 128 } };
+    /** Number of measured passes of each operation. */
+    private static final int PASSES = 5;
+    /** Number of random positions the operations cycle through, a power of two. */
+    private static final int POSITIONS = 1024;
+    /** Size of the off-screen image the frames are drawn on, in pixels. */
+    private static final int SCREEN_WIDTH = 1600;
+    private static final int SCREEN_HEIGHT = 900;
+
+    private static long sink;
+
+    private BackpackScalingBench() {
+        throw new AssertionError("no instance");
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        IO.println(String.format("%-8s %12s %9s %11s %10s %15s %8s %8s %10s", "size", "place+remove", "getItemAt",
+                "unlock+undo", "unlockable", "legalPlacements", "firstFit", "snapshot", "frame"));
+        for (var size : SIZES) {
+            bench(size[0], size[1]);
+        }
+        // Uses the results of the operations so the JIT cannot drop them
+        IO.println("checksum: " + sink);
+    }
+
+    private static void bench(int width, int height) {
+        var state = new GameState(width, height);
+        var backpack = state.getBackpack();
+        var history = state.getBackpackHistory();
+        for (int ring = 0; ring < width + height; ring++) {
+            for (var cell : backpack.getUnlockableCells()) {
+                if (cell.x() < 2 * width / 3) {
+                    backpack.unlockCell(cell);
+                }
+            }
+        }
+        var random = new Random(1);
+        for (int i = 0; i < width * height / 8; i++) {
+            backpack.place(Weapon.ironSword(), Position.of(random.nextInt(width), random.nextInt(height)));
+        }
+        var positions = new Position[POSITIONS];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = Position.of(random.nextInt(width), random.nextInt(height));
+        }
+        var shield = Armor.ironShield();
+        var sword = Weapon.ironSword();
+        var frontier = backpack.getUnlockableCells();
+        var anchors = new ArrayList<>(backpack.getItems().keySet());
+        var counter = new int[1];
+
+        double place = time(20_000, () -> {
+            var position = positions[counter[0]++ & (POSITIONS - 1)];
+            if (backpack.place(shield, position)) {
+                backpack.remove(position);
+            }
+        });
+        double itemAt = time(200_000, () -> {
+            sink += backpack.getItemAt(positions[counter[0]++ & (POSITIONS - 1)]).isPresent() ? 1 : 0;
+        });
+        double unlock = time(20_000, () -> {
+            if (history.unlock(frontier.get(counter[0]++ % frontier.size()))) {
+                history.undo();
+            }
+        });
+        double unlockable = time(2_000, () -> sink += backpack.getUnlockableCells().size());
+        double legal = time(2_000, () -> sink += backpack.legalPlacements(sword).length);
+        double firstFit = time(2_000, () -> {
+            if (backpack.placeFirstFit(shield)) {
+                backpack.remove(backpack.findAnchorFor(shield));
+            }
+        });
+        double snapshot = time(2_000, () -> {
+            backpack.rotateItem(anchors.get(counter[0]++ % anchors.size()));
+            sink += backpack.snapshot().getItemCount();
+        });
+        var view = new View(state);
+        var context = new ImageContext(SCREEN_WIDTH, SCREEN_HEIGHT);
+        double render = time(20, () -> view.draw(context));
+        IO.println(String.format("%-8s %9.0f ns %6.0f ns %8.0f ns %7.0f ns %12.0f ns %5.0f ns %5.0f ns %7.2f ms",
+                width + "x" + height, place, itemAt, unlock, unlockable, legal, firstFit, snapshot, render / 1e6));
+    }
+
+    /**
+     * Returns the best average time of an operation over several passes, in
+     * nanoseconds.
+     */
+    private static double time(int iterations, Runnable operation) {
+        // The first pass warms up the JIT
+        for (int i = 0; i < iterations; i++) {
+            operation.run();
+        }
+        double best = Double.MAX_VALUE;
+        for (int pass = 0; pass < PASSES; pass++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                operation.run();
+            }
+            best = Math.min(best, (System.nanoTime() - start) / (double) iterations);
+        }
+        return best;
+    }
+
+    /**
+     * An application context without a window, that renders the frames on an
+     * off-screen image and has no event.
+     */
+    private static final class ImageContext implements ApplicationContext {
+        private final BufferedImage image;
+
+        private ImageContext(int width, int height) {
+            this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        }
+
+        @Override
+        public ScreenInfo getScreenInfo() {
+            return new ScreenInfo(image.getWidth(), image.getHeight());
+        }
+
+        @Override
+        public void renderFrame(Consumer<Graphics2D> renderer) {
+            var screen = image.createGraphics();
+            try {
+                renderer.accept(screen);
+            } finally {
+                screen.dispose();
+            }
+        }
+
+        @Override
+        public Event pollEvent() {
+            return null;
+        }
+
+        @Override
+        public Event pollOrWaitEvent(long timeout) {
+            return null;
+        }
+
+        @Override
+        public void dispose() {
+            // Nothing to release, the image is garbage collected
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package fr.uge.backpackhero.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.Supplier;
+
+import fr.uge.backpackhero.logic.BatchCombatSimulator;
+import fr.uge.backpackhero.model.entity.Hero;
+import fr.uge.backpackhero.model.item.Armor;
+import fr.uge.backpackhero.model.item.Item;
+import fr.uge.backpackhero.model.item.Weapon;
+import fr.uge.backpackhero.model.level.Dungeon;
+
+/**
+ * Checks the {@link BatchCombatSimulator} against the combat engine, then
+ * measures its throughput.
+ * <p>
+ * Random combats are built from the enemies of the first floors and from
+ * loadouts of one to five weapons and armors. One combat out of eight starts
+ * with some of its enemies dead, and one out of sixteen with all of them dead,
+ * which must be won without playing any round. The combats are played to the
+ * end, then again for two rounds only so that unfinished combats are checked
+ * too, and {@link BatchCombatSimulator#crossCheck()} replays every one of them
+ * with the engine. The throughput is the best of several runs of fresh
+ * combats.
+ * <p>
+ * Usage: {@code ant check-batch}, or with the classes and the benchmarks on
+ * the class path: {@code java fr.uge.backpackhero.bench.BatchCombatCheck}.
+ *
+ */
+public final class BatchCombatCheck {
+
+    /** Number of combats of a batch. */
+    private static final int COMBATS = 100_000;
+    /** Largest number of rounds of a combat. */
+    private static final int MAX_TURNS = 100;
+    /** Number of measured runs. */
+    private static final int PASSES = 5;
+
+    private static final List<Supplier<Item>> LOOT = List.of(Weapon::woodenSword, Weapon::woodenBow,
+            Weapon::ironSword, Weapon::ironBow, Weapon::goldenSword, Weapon::diamondSword, Weapon::sturn,
+            Armor::woodenShield, Armor::ironShield, Armor::goldenShield, Armor::diamondShield, Armor::luckypants);
+
+    private BatchCombatCheck() {
+        throw new AssertionError("no instance");
+    }
+
+    /**
+     * Runs the check and the benchmark.
+     *
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        var simulator = new BatchCombatSimulator(COMBATS, Dungeon.MAX_ROOM_ENEMIES, 8);
+        fill(simulator, 42);
+        long rounds = simulator.run(MAX_TURNS);
+        int won = 0;
+        int over = 0;
+        for (int k = 0; k < COMBATS; k++) {
+            if (simulator.isWon(k)) {
+                won++;
+            }
+            if (simulator.isOver(k)) {
+                over++;
+            }
+            if (k % 16 == 0 && (!simulator.isWon(k) || simulator.getTurns(k) != 0)) {
+                throw new IllegalStateException("combat " + k + " against dead enemies was not won at once");
+            }
+        }
+        IO.println(COMBATS + " combats, " + rounds + " rounds, " + won + " won, " + over + " over, "
+                + simulator.crossCheck() + " checked against the engine");
+
+        simulator.clear();
+        fill(simulator, 7);
+        simulator.run(2);
+        IO.println("after 2 rounds: " + simulator.crossCheck() + " checked against the engine");
+
+        double best = 0;
+        for (int pass = 0; pass <= PASSES; pass++) {
+            simulator.clear();
+            fill(simulator, pass);
+            long start = System.nanoTime();
+            long played = simulator.run(MAX_TURNS);
+            double rate = played * 1e3 / (System.nanoTime() - start);
+            // The first run warms up the JIT
+            if (pass > 0) {
+                best = Math.max(best, rate);
+            }
+        }
+        IO.println(String.format("throughput: %.1fM rounds/s", best));
+    }
+
+    private static void fill(BatchCombatSimulator simulator, long seed) {
+        var random = new SplittableRandom(seed);
+        var hero = new Hero();
+        for (int k = 0; k < COMBATS; k++) {
+            var loadout = new ArrayList<Item>();
+            for (int i = 1 + random.nextInt(5); i > 0; i--) {
+                loadout.add(LOOT.get(random.nextInt(LOOT.size())).get());
+            }
+            hero.setHp(10 + random.nextInt(31));
+            var enemies = Dungeon.enemiesForFloor(random.nextInt(3), 1 + random.nextInt(Dungeon.MAX_ROOM_ENEMIES));
+            if (k % 16 == 0) {
+                enemies.forEach(enemy -> enemy.setHp(0));
+            } else if (k % 8 == 0) {
+                enemies.get(random.nextInt(enemies.size())).setHp(0);
+            }
+            simulator.add(hero, enemies, loadout, random.nextLong());
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package fr.uge.backpackhero.bench;
+
+import java.util.Optional;
+
+import fr.uge.backpackhero.model.item.Backpack;
+import fr.uge.backpackhero.model.item.Item;
+import fr.uge.backpackhero.model.item.ManaStone;
+import fr.uge.backpackhero.model.item.Weapon;
+import fr.uge.backpackhero.model.level.Position;
+
+/**
+ * Compares the lookup of the item covering a cell through the cell index of
+ * the {@link Backpack} with the scan it replaced, which went through every
+ * item and built the set of the cells of its shape.
+ * <p>
+ * For each size, the backpack is fully unlocked and filled with two-cell
+ * weapons then single mana stones, placed at the first free place. Both
+ * lookups are timed on every cell of the backpack, the item and the anchor
+ * they find must agree. The time of a lookup is the best average of several
+ * passes, after a warm-up pass.
+ * <p>
+ * Usage: {@code ant bench-cells}, or with the classes and the benchmarks on
+ * the class path: {@code java fr.uge.backpackhero.bench.CellIndexBench}.
+ *
+ */
+public final class CellIndexBench {
+
+    /** Sizes of the backpacks measured, width then height. */
+    private static final int[][] SIZES = { { 7, 5 }, { 16, 16 }, { 32, 32 } };
+    /** Number of measured passes of each lookup. */
+    private static final int PASSES = 5;
+    /** Number of lookups of a pass, at least. */
+    private static final int LOOKUPS = 200_000;
+
+    private static long sink;
+
+    private CellIndexBench() {
+        throw new AssertionError("no instance");
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        IO.println(String.format("%-8s %6s %12s %12s %8s", "size", "items", "scan", "index", "speedup"));
+        for (var size : SIZES) {
+            bench(size[0], size[1]);
+        }
+        // Uses the results of the lookups so the JIT cannot drop them
+        IO.println("checksum: " + sink);
+    }
+
+    private static void bench(int width, int height) {
+        var backpack = fullBackpack(width, height);
+        var cells = new Position[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                var cell = Position.of(x, y);
+                if (!scanItemAt(backpack, cell).equals(backpack.getItemAt(cell))
+                        || !scanAnchorAt(backpack, cell).equals(backpack.getAnchorAt(cell))) {
+                    throw new IllegalStateException("the index and the scan disagree on " + cell);
+                }
+                cells[y * width + x] = cell;
+            }
+        }
+        // The scan is linear in the number of items, it gets fewer lookups
+        int items = backpack.getItems().size();
+        double scan = time(Math.max(cells.length, LOOKUPS / items), cells,
+                cell -> scanItemAt(backpack, cell).isPresent());
+        double index = time(Math.max(cells.length, LOOKUPS), cells, cell -> backpack.getItemAt(cell).isPresent());
+        IO.println(String.format("%-8s %6d %9.1f ns %9.1f ns %7.0fx", width + "x" + height, items, scan, index,
+                scan / index));
+    }
+
+    private static Backpack fullBackpack(int width, int height) {
+        var backpack = new Backpack(width, height);
+        for (var cells = backpack.getUnlockableCells(); !cells.isEmpty(); cells = backpack.getUnlockableCells()) {
+            for (var cell : cells) {
+                backpack.unlockCell(cell);
+            }
+        }
+        for (int i = 0; backpack.placeFirstFit(i % 2 == 0 ? Weapon.ironSword() : Weapon.ironBow()); i++) {
+            // Places two-cell weapons while one fits
+        }
+        while (backpack.placeFirstFit(ManaStone.smallManaStone())) {
+            // Fills the cells left with single stones
+        }
+        return backpack;
+    }
+
+    /**
+     * Finds the item covering a cell by going through every item, as the
+     * backpack did before its cell index.
+     */
+    private static Optional<Item> scanItemAt(Backpack backpack, Position pos) {
+        for (var entry : backpack.getItems().entrySet()) {
+            if (entry.getValue().getShape().getAbsolutePositions(entry.getKey()).contains(pos)) {
+                return Optional.of(entry.getValue());
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Finds the anchor of the item covering a cell by going through every
+     * item, as the backpack did before its cell index.
+     */
+    private static Optional<Position> scanAnchorAt(Backpack backpack, Position pos) {
+        for (var entry : backpack.getItems().entrySet()) {
+            if (entry.getValue().getShape().getAbsolutePositions(entry.getKey()).contains(pos)) {
+                return Optional.of(entry.getKey());
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * A lookup of one cell.
+     */
+    @FunctionalInterface
+    private interface Lookup {
+        boolean find(Position cell);
+    }
+
+    /**
+     * Returns the best average time of a lookup over several passes, in
+     * nanoseconds, the lookups going through the cells in order.
+     */
+    private static double time(int lookups, Position[] cells, Lookup lookup) {
+        // The first pass warms up the JIT
+        double best = Double.MAX_VALUE;
+        for (int pass = 0; pass <= PASSES; pass++) {
+            long found = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < lookups; i++) {
+                found += lookup.find(cells[i % cells.length]) ? 1 : 0;
+            }
+            long time = System.nanoTime() - start;
+            sink += found;
+            if (pass > 0) {
+                best = Math.min(best, time / (double) lookups);
+            }
+        }
+        return best;
+    }
+}
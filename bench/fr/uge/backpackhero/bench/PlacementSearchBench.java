@@ -0,0 +1,138 @@
+package fr.uge.backpackhero.bench;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import fr.uge.backpackhero.logic.LootPacker;
+import fr.uge.backpackhero.model.item.Armor;
+import fr.uge.backpackhero.model.item.Backpack;
+import fr.uge.backpackhero.model.item.Item;
+import fr.uge.backpackhero.model.item.Weapon;
+
+/**
+ * Measures the speedup of the parallel placement search with the number of
+ * threads of its pool, on the loot packing of a 7x5 and a 12x12 backpack.
+ * <p>
+ * Each backpack is fully unlocked and gets the same loot sets for every pool
+ * size, more loot than it can hold so that the search has to prove which items
+ * to leave. The time of a pool size is the best of several passes over all the
+ * loot sets, after a warm-up pass; every pool size must find the optimal
+ * values of the sequential search.
+ * <p>
+ * Usage: {@code ant bench-search}, or with the classes and the benchmarks on
+ * the class path: {@code java fr.uge.backpackhero.bench.PlacementSearchBench [maxThreads]},
+ * maxThreads being the number of available processors by default.
+ *
+ */
+public final class PlacementSearchBench {
+
+    /** Number of loot sets packed in one pass. */
+    private static final int LOOT_SETS = 10;
+    /** Number of measured passes of each pool size. */
+    private static final int PASSES = 5;
+    /** Time budget of one search, far more than any loot set needs. */
+    private static final Duration TIME_BUDGET = Duration.ofSeconds(30);
+
+    private PlacementSearchBench() {
+        throw new AssertionError("no instance");
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the largest number of threads, optional
+     */
+    public static void main(String[] args) {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        IO.println("available processors: " + Runtime.getRuntime().availableProcessors());
+        bench(7, 5, 10, maxThreads);
+        bench(12, 12, 33, maxThreads);
+    }
+
+    private static void bench(int width, int height, int itemCount, int maxThreads) {
+        var lootSets = new ArrayList<List<Item>>();
+        for (int seed = 0; seed < LOOT_SETS; seed++) {
+            lootSets.add(loot(itemCount, seed));
+        }
+        IO.println(width + "x" + height + ", " + LOOT_SETS + " loot sets of " + itemCount + " items");
+        IO.println("  threads   time/set   speedup");
+        var expected = new int[LOOT_SETS];
+        long sequential = time(new LootPacker(Item::getPrice, TIME_BUDGET), width, height, lootSets, expected);
+        IO.println(String.format("  %7s %8.2f ms", "none", sequential / 1e6 / LOOT_SETS));
+        long single = 0;
+        for (int threads = 1; threads <= maxThreads; threads = threads < maxThreads ? Math.min(threads * 2, maxThreads)
+                : threads + 1) {
+            var pool = new ForkJoinPool(threads);
+            try {
+                var values = new int[LOOT_SETS];
+                long time = time(new LootPacker(Item::getPrice, TIME_BUDGET, pool), width, height, lootSets, values);
+                if (!Arrays.equals(expected, values)) {
+                    throw new IllegalStateException(threads + " threads found other values than the sequential search");
+                }
+                if (threads == 1) {
+                    single = time;
+                }
+                IO.println(String.format("  %7d %8.2f ms %8.2fx", threads, time / 1e6 / LOOT_SETS,
+                        (double) single / time));
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Returns the best time of a pass over all the loot sets, in nanoseconds,
+     * and stores the values found.
+     */
+    private static long time(LootPacker packer, int width, int height, List<List<Item>> lootSets, int[] values) {
+        long best = Long.MAX_VALUE;
+        for (int pass = 0; pass <= PASSES; pass++) {
+            long time = 0;
+            for (int i = 0; i < lootSets.size(); i++) {
+                var backpack = unlockedBackpack(width, height);
+                long start = System.nanoTime();
+                var result = packer.solve(backpack, lootSets.get(i));
+                time += System.nanoTime() - start;
+                if (!result.optimal()) {
+                    throw new IllegalStateException("loot set " + i + " ran out of time");
+                }
+                values[i] = result.value();
+            }
+            // The first pass warms up the JIT
+            if (pass > 0) {
+                best = Math.min(best, time);
+            }
+        }
+        return best;
+    }
+
+    private static Backpack unlockedBackpack(int width, int height) {
+        var backpack = new Backpack(width, height);
+        for (var cells = backpack.getUnlockableCells(); !cells.isEmpty(); cells = backpack.getUnlockableCells()) {
+            for (var cell : cells) {
+                backpack.unlockCell(cell);
+            }
+        }
+        return backpack;
+    }
+
+    private static List<Item> loot(int count, long seed) {
+        var random = new Random(seed);
+        var loot = new ArrayList<Item>(count);
+        for (int i = 0; i < count; i++) {
+            loot.add(switch (random.nextInt(6)) {
+                case 0 -> Weapon.ironSword();
+                case 1 -> Weapon.goldenBow();
+                case 2 -> Armor.ironShield();
+                case 3 -> Weapon.sturn();
+                case 4 -> Armor.luckypants();
+                default -> Weapon.woodenBow();
+            });
+        }
+        return loot;
+    }
+}
@@ -0,0 +1,132 @@
+package fr.uge.backpackhero.bench;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+
+import fr.uge.backpackhero.logic.Command;
+import fr.uge.backpackhero.logic.GameSession;
+import fr.uge.backpackhero.logic.GameState;
+import fr.uge.backpackhero.model.item.Item;
+import fr.uge.backpackhero.model.level.Position;
+import fr.uge.backpackhero.model.level.RoomType;
+
+/**
+ * Checks that a game only depends on its seed: each of the first 200 seeds is
+ * played twice with the same random commands, and both games must go through
+ * the same states.
+ * <p>
+ * A game is a {@link GameState} with a 7x5 backpack and the seed, played by a
+ * {@link GameSession} for at most 5000 commands drawn from a random sequence
+ * made from the seed: moves, item uses and ends of turn, loot taken at random
+ * cells or left, purchases and sales, unlocks and heals. The automatic loot
+ * packing is not used, its search is bounded by time. After every command,
+ * whether it applied, the state, the floor, the position, the health of the
+ * hero and the gold are folded into a fingerprint of the game.
+ * <p>
+ * Usage: {@code ant check-seed}, or with the classes and the benchmarks on
+ * the class path: {@code java fr.uge.backpackhero.bench.SeedCheck}.
+ *
+ */
+public final class SeedCheck {
+
+    /** Number of seeds checked. */
+    private static final int SEEDS = 200;
+    /** Largest number of commands of a game. */
+    private static final int MAX_COMMANDS = 5000;
+    private static final int WIDTH = 7;
+    private static final int HEIGHT = 5;
+
+    private SeedCheck() {
+        throw new AssertionError("no instance");
+    }
+
+    /**
+     * Runs the check.
+     *
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        int victories = 0;
+        int defeats = 0;
+        long commands = 0;
+        for (long seed = 0; seed < SEEDS; seed++) {
+            var first = play(seed);
+            var second = play(seed);
+            if (!first.equals(second)) {
+                throw new IllegalStateException("seed " + seed + " gave two games: " + first + " and " + second);
+            }
+            victories += first.victory() ? 1 : 0;
+            defeats += first.defeat() ? 1 : 0;
+            commands += first.commands();
+        }
+        IO.println(SEEDS + " seeds reproduced: " + victories + " victories, " + defeats + " defeats, " + commands
+                + " commands");
+    }
+
+    /**
+     * The end of a game and the fingerprint of the states it went through.
+     */
+    private record Game(long fingerprint, int commands, boolean victory, boolean defeat, int score) {
+    }
+
+    private static Game play(long seed) {
+        var random = new SplittableRandom(seed);
+        var session = new GameSession(new GameState(WIDTH, HEIGHT, seed));
+        var state = session.getState();
+        long fingerprint = seed;
+        int commands = 0;
+        while (!session.isFinished() && commands < MAX_COMMANDS) {
+            boolean applied = session.execute(nextCommand(state, random));
+            commands++;
+            var position = state.getPosition();
+            long step = (applied ? 1 : 0) ^ (long) state.getState().ordinal() << 1 ^ (long) state.getFloor() << 5
+                    ^ (long) position.x() << 10 ^ (long) position.y() << 20 ^ (long) state.getHero().getHp() << 30
+                    ^ (long) state.getBackpack().goldAmount() << 40;
+            fingerprint = fingerprint * 31 + step;
+        }
+        return new Game(fingerprint, commands, state.isVictory(), state.isGameOver(), state.calculateScore());
+    }
+
+    private static Command nextCommand(GameState state, SplittableRandom random) {
+        return switch (state.getState()) {
+            case EXPLORATION -> {
+                var room = state.getCurrentFloor().getRoom(state.getPosition());
+                if (room.getType() == RoomType.MERCHANT && random.nextInt(4) == 0) {
+                    // The shop is a hash map, its items are sorted so the choice does not depend on its order
+                    var shop = new ArrayList<>(room.getMerchantItems().keySet());
+                    shop.sort(Comparator.comparing(Item::getName).thenComparingInt(Item::getPrice));
+                    if (!shop.isEmpty() && random.nextBoolean()) {
+                        yield new Command.Buy(shop.get(random.nextInt(shop.size())), randomCell(random));
+                    }
+                    yield new Command.Sell(randomCell(random));
+                }
+                var position = state.getPosition();
+                yield switch (random.nextInt(4)) {
+                    case 0 -> new Command.Move(Position.of(position.x() + 1, position.y()));
+                    case 1 -> new Command.Move(Position.of(position.x() - 1, position.y()));
+                    case 2 -> new Command.Move(Position.of(position.x(), position.y() + 1));
+                    default -> new Command.Move(Position.of(position.x(), position.y() - 1));
+                };
+            }
+            case COMBAT -> random.nextInt(4) == 0 ? new Command.EndTurn() : new Command.UseItem(randomCell(random));
+            case LOOT_SCREEN -> {
+                var loot = state.getAvailableLoot();
+                if (!loot.isEmpty() && random.nextInt(3) != 0) {
+                    yield new Command.TakeLoot(loot.get(random.nextInt(loot.size())), randomCell(random));
+                }
+                yield new Command.LeaveLoot();
+            }
+            case CELL_UNLOCK -> {
+                var cells = state.getBackpack().getUnlockableCells();
+                yield new Command.Unlock(cells.isEmpty() ? Position.of(0, 0) : cells.get(random.nextInt(cells.size())));
+            }
+            case HEALER_PROMPT -> new Command.Heal(random.nextBoolean());
+            case MERCHANT -> new Command.EndTurn();
+        };
+    }
+
+    private static Position randomCell(SplittableRandom random) {
+        return Position.of(random.nextInt(WIDTH), random.nextInt(HEIGHT));
+    }
+}
@@ -31,6 +31,8 @@ public class Main {
     private final static int EVENT_POLL_TIMEOUT_MS = 10;
     private static final HOF HALL_OF_FAME = initializeHOF();
     private static String playerName = "Player";
+    private static int backpackWidth = GameState.DEFAULT_BACKPACK_WIDTH;
+    private static int backpackHeight = GameState.DEFAULT_BACKPACK_HEIGHT;
 
     /**
      * Initializes the Hall of Fame, handling potential I/O errors.
@@ -50,18 +52,46 @@ public class Main {
     /**
      * Main method to launch the game.
      * 
-     * @param args command line arguments: args[0] = player name (optional)
+     * @param args command line arguments: args[0] = player name (optional),
+     *             args[1] = backpack size as WIDTHxHEIGHT, e.g. 32x32 (optional)
      */
 
     public static void main(String[] args) {
         if (args.length > 0 && !args[0].isBlank()) {
             playerName = args[0];
         }
+        if (args.length > 1) {
+            parseBackpackSize(args[1]);
+        }
         Application.run(Color.BLACK, Main::gameEntry);
     }
 
+    /**
+     * Reads a backpack size written as WIDTHxHEIGHT; keeps the default size if
+     * it is malformed.
+     * 
+     * @param size the size to parse
+     */
+    private static void parseBackpackSize(String size) {
+        var parts = size.toLowerCase().split("x");
+        try {
+            if (parts.length == 2) {
+                int width = Integer.parseInt(parts[0]);
+                int height = Integer.parseInt(parts[1]);
+                if (width >= 3 && height >= 3) {
+                    backpackWidth = width;
+                    backpackHeight = height;
+                    return;
+                }
+            }
+        } catch (NumberFormatException e) {
+            // Falls through to the message below
+        }
+        IO.println("Invalid backpack size: " + size + ", using " + backpackWidth + "x" + backpackHeight);
+    }
+
     private static void gameEntry(ApplicationContext context) {
-        var state = new GameState();
+        var state = new GameState(backpackWidth, backpackHeight);
         var view = new View(state);
         var controller = new Controller(state, view);
         boolean scoreSubmitted = false;
@@ -113,8 +143,20 @@ public class Main {
                         continue;
                     }
 
+                    // Handle win chance estimate in combat with H
+                    if (ke.key() == KeyboardEvent.Key.H && state.getState() == State.COMBAT) {
+                        controller.handleWinEstimate(context);
+                        continue;
+                    }
+
+                    // Handle turn suggestion in combat with T
+                    if (ke.key() == KeyboardEvent.Key.T && state.getState() == State.COMBAT) {
+                        controller.handleSuggestTurn(context);
+                        continue;
+                    }
+
                     if (ke.key() == KeyboardEvent.Key.Z && (state.isGameOver() || state.isVictory())) {
-                        state = new GameState();
+                        state = new GameState(backpackWidth, backpackHeight);
                         scoreSubmitted = false;
                         view.draw(context);
                     }
@@ -157,6 +199,22 @@ public class Main {
                         }
                     }
 
+                    // Handle auto-arrange of the backpack with G
+                    if (ke.key() == KeyboardEvent.Key.G) {
+                        controller.handleAutoArrange(context);
+                        continue;
+                    }
+
+                    // Handle undo/redo of backpack edits with W/V
+                    if (ke.key() == KeyboardEvent.Key.W) {
+                        controller.handleUndo(context);
+                        continue;
+                    }
+                    if (ke.key() == KeyboardEvent.Key.V) {
+                        controller.handleRedo(context);
+                        continue;
+                    }
+
                     // Handle Discard item with D key
                     if (ke.key() == KeyboardEvent.Key.D) {
                         controller.handleDiscardItem(context);
@@ -169,6 +227,11 @@ public class Main {
                             controller.handleLootContinue(context);
                             continue;
                         }
+                        // Handle auto-packing of the loot with F (Fill)
+                        if (ke.key() == KeyboardEvent.Key.F) {
+                            controller.handleLootAutoPack(context);
+                            continue;
+                        }
                         // Handle number keys 1-9 for item selection
                         int itemIndex = getNumberKeyIndex(ke.key());
                         if (itemIndex >= 0) {
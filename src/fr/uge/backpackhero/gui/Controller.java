@@ -11,6 +11,7 @@ import fr.uge.backpackhero.gui.handlers.DungeonHandler;
 import fr.uge.backpackhero.gui.handlers.HealerHandler;
 import fr.uge.backpackhero.gui.handlers.LootHandler;
 import fr.uge.backpackhero.gui.handlers.MerchantHandler;
+import fr.uge.backpackhero.logic.GameSession;
 import fr.uge.backpackhero.logic.GameState;
 
 /**
@@ -41,13 +42,14 @@ public class Controller {
         this.state = Objects.requireNonNull(state, "state cannot be null");
         this.view = Objects.requireNonNull(view, "view cannot be null");
 
-        // Initialize handlers in correct order (some depend on others)
-        this.combatHandler = new CombatHandler(state, view);
-        this.backpackHandler = new BackpackHandler(state, view, combatHandler);
-        this.dungeonHandler = new DungeonHandler(state, view);
-        this.healerHandler = new HealerHandler(state, view);
-        this.lootHandler = new LootHandler(state, view);
-        this.merchantHandler = new MerchantHandler(state, view);
+        // The handlers share one session, which applies the rules of the game
+        var session = new GameSession(state, IO::println);
+        this.combatHandler = new CombatHandler(session, view);
+        this.backpackHandler = new BackpackHandler(session, view);
+        this.dungeonHandler = new DungeonHandler(session, view);
+        this.healerHandler = new HealerHandler(session, view);
+        this.lootHandler = new LootHandler(session, view);
+        this.merchantHandler = new MerchantHandler(session, view);
     }
 
     // Backpack Operations
@@ -71,6 +73,33 @@ public class Controller {
         backpackHandler.handleRotateItem(context);
     }
 
+    /**
+     * Handles the request to rearrange the items of the backpack.
+     * 
+     * @param context the application context
+     */
+    public void handleAutoArrange(ApplicationContext context) {
+        backpackHandler.handleAutoArrange(context);
+    }
+
+    /**
+     * Handles the request to undo the last backpack edit.
+     * 
+     * @param context the application context
+     */
+    public void handleUndo(ApplicationContext context) {
+        backpackHandler.handleUndo(context);
+    }
+
+    /**
+     * Handles the request to redo the last undone backpack edit.
+     * 
+     * @param context the application context
+     */
+    public void handleRedo(ApplicationContext context) {
+        backpackHandler.handleRedo(context);
+    }
+
     /**
      * Handles the request to discard the currently selected item.
      * 
@@ -109,6 +138,24 @@ public class Controller {
         combatHandler.handleEndTurn(context);
     }
 
+    /**
+     * Shows the estimated chance of winning the current combat.
+     * 
+     * @param context the application context
+     */
+    public void handleWinEstimate(ApplicationContext context) {
+        combatHandler.handleWinEstimate(context);
+    }
+
+    /**
+     * Shows the suggested items to use this turn.
+     * 
+     * @param context the application context
+     */
+    public void handleSuggestTurn(ApplicationContext context) {
+        combatHandler.handleSuggestTurn(context);
+    }
+
     // Dungeon Operations
 
     /**
@@ -173,6 +220,15 @@ public class Controller {
         lootHandler.handleLootItemSelection(context, index);
     }
 
+    /**
+     * Packs the most valuable loot items in the backpack automatically.
+     * 
+     * @param context the application context
+     */
+    public void handleLootAutoPack(ApplicationContext context) {
+        lootHandler.handleLootAutoPack(context);
+    }
+
     // Merchant Operations
 
     /**
@@ -43,10 +43,14 @@ public class View {
         this.state = Objects.requireNonNull(state, "state cannot be null");
     }
 
-    /** The width of the backpack display area in tiles. */
-    private static final int BACKPACK_WIDTH_IN_TILES = 7;
     /** The width of the backpack display area in pixels. */
-    private static final int BACKPACK_PIXEL_WIDTH = BACKPACK_WIDTH_IN_TILES * 100;
+    private static final int BACKPACK_PIXEL_WIDTH = 700;
+    /** The height of the backpack display area in pixels, above the popups. */
+    private static final int BACKPACK_PIXEL_HEIGHT = 670;
+    /** The size of a backpack tile in pixels when the backpack is small enough. */
+    private static final int MAX_TILE_SIZE = 100;
+    /** The smallest tile size on which the names of the items are drawn. */
+    private static final int MIN_LABELED_TILE_SIZE = 40;
 
     // Popup positioning constants
     /** X position for all left sidebar popups. */
@@ -84,6 +88,16 @@ public class View {
     private static final Color OVERLAY_BG = new Color(0, 0, 0, 180);
     /** Button/box gray. */
     private static final Color BOX_GRAY = new Color(60, 60, 60);
+    /** Highlight of the backpack cells that can be unlocked. */
+    private static final Color UNLOCKABLE_CELL_BG = new Color(0, 150, 0, 100);
+    /** Background of the locked backpack cells. */
+    private static final Color LOCKED_CELL_BG = new Color(50, 50, 50);
+    /** Border of the locked backpack cells. */
+    private static final Color LOCKED_CELL_BORDER = new Color(80, 80, 80);
+    /** Color of the armors in the backpack. */
+    private static final Color ARMOR_ITEM_COLOR = new Color(139, 69, 19);
+    /** Color of the other items in the backpack. */
+    private static final Color WEAPON_ITEM_COLOR = new Color(100, 0, 0);
     
     // Font sizes
     /** Large title font size. */
@@ -93,6 +107,20 @@ public class View {
     /** Small font size. */
     private static final float FONT_SMALL = 12f;
 
+    /**
+     * Returns the size in pixels of a backpack tile. Tiles are 100 pixels wide
+     * when the backpack fits, and shrink so that bigger backpacks still fit in
+     * the backpack display area.
+     * 
+     * @return the size of a backpack tile in pixels
+     */
+    public int getTileSize() {
+        var backpack = state.getBackpack();
+        int fitting = Math.min(BACKPACK_PIXEL_WIDTH / backpack.getWidth(),
+                BACKPACK_PIXEL_HEIGHT / backpack.getHeight());
+        return Math.max(1, Math.min(MAX_TILE_SIZE, fitting));
+    }
+
     /**
      * Draws the entire game view including backpack, dungeon, hero, and combat
      * interface.
@@ -148,46 +176,32 @@ public class View {
     /**
      * Draws a single cell of an item in the backpack.
      * 
-     * @param screen     the graphics context to draw on
-     * @param item       the item to draw
-     * @param cellPos    the position of the cell within the backpack
-     * @param isAnchor   whether the cell is the anchor cell of the item
-     * @param isSelected whether the item is currently selected
+     * @param screen   the graphics context to draw on
+     * @param x        the column of the cell within the backpack
+     * @param y        the row of the cell within the backpack
+     * @param fill     the color of the cell
+     * @param border   the color of the border of the cell
+     * @param inset    the space left around the cell, in pixels
+     * @param tileSize the size of a backpack tile in pixels
      */
-    private void drawItemCell(Graphics2D screen, Item item, Position cellPos, boolean isAnchor,
-            boolean isSelected) {
-        int x = cellPos.x() * 100;
-        int y = cellPos.y() * 100;
-
-        Color itemColor = switch (item) {
-            case Armor _ -> new Color(139, 69, 19);
-            default -> new Color(100, 0, 0);
-        };
-
-        // If item is selected, make it brighter
-        if (isSelected) {
-            itemColor = itemColor.brighter().brighter();
-        }
+    private static void drawItemCell(Graphics2D screen, int x, int y, Color fill, Color border, int inset,
+            int tileSize) {
+        int left = x * tileSize + inset;
+        int top = y * tileSize + inset;
+        int size = tileSize - 2 * inset;
 
-        screen.setColor(itemColor);
-        screen.fillRect(x + 2, y + 2, 100 - 4, 100 - 4);
+        screen.setColor(fill);
+        screen.fillRect(left, top, size, size);
 
-        screen.setColor(itemColor.brighter());
-        screen.setStroke(new BasicStroke(2));
-        screen.drawRect(x + 2, y + 2, 100 - 4, 100 - 4);
-        if (isAnchor) {
-            screen.setColor(Color.WHITE);
-            String name = item.getName();
-            screen.drawString(name, x + 5, y + 20);
-        }
+        screen.setColor(border);
+        screen.drawRect(left, top, size, size);
     }
 
     /**
-     * Draws the backpack on the screen.
+     * Draws the backpack of the game state on the left of the screen: its
+     * background, its grid and its items.
      * 
-     * @param screen       the graphics context to draw on
-     * @param backpack     the backpack to draw
-     * @param screenHeight the height of the screen
+     * @param screen the graphics context to draw on
      */
     private void drawBackpack(Graphics2D screen) {
         var backpack = state.getBackpack();
@@ -213,12 +227,33 @@ public class View {
      */
     private void drawItems(Graphics2D screen, Backpack backpack, GameState state) {
         Position selectedAnchor = state.getSelectedItemAnchor();
+        int tileSize = getTileSize();
+        boolean labeled = tileSize >= MIN_LABELED_TILE_SIZE;
+        int inset = labeled ? 2 : 0;
+        screen.setStroke(new BasicStroke(inset));
 
         backpack.getItems().forEach((anchor, item) -> {
-            boolean isSelected = anchor.equals(selectedAnchor);
-            var cells = item.getShape().getAbsolutePositions(anchor);
-            for (var cell : cells) {
-                drawItemCell(screen, item, cell, cell.equals(anchor), isSelected);
+            Color fill = switch (item) {
+                case Armor _ -> ARMOR_ITEM_COLOR;
+                default -> WEAPON_ITEM_COLOR;
+            };
+            // If item is selected, make it brighter
+            if (anchor.equals(selectedAnchor)) {
+                fill = fill.brighter().brighter();
+            }
+            Color border = fill.brighter();
+
+            // The cells of each row are the set bits of the row mask of the shape
+            var shape = item.getShape();
+            for (int row = 0; row < shape.getHeight(); row++) {
+                for (long cells = shape.getRowMask(row); cells != 0; cells &= cells - 1) {
+                    int column = Long.numberOfTrailingZeros(cells);
+                    drawItemCell(screen, anchor.x() + column, anchor.y() + row, fill, border, inset, tileSize);
+                }
+            }
+            if (labeled && (shape.getRowMask(0) & 1) != 0) {
+                screen.setColor(Color.WHITE);
+                screen.drawString(item.getName(), anchor.x() * tileSize + 5, anchor.y() * tileSize + 20);
             }
         });
     }
@@ -233,39 +268,42 @@ public class View {
      */
     private void drawBackpackGrid(Graphics2D screen, Backpack backpack, GameState state, int heightInTiles) {
         screen.setStroke(new BasicStroke(1));
+        // The frontier is read once per frame instead of once per cell
+        var unlockable = state.getState() == State.CELL_UNLOCK ? backpack.getUnlockableMask() : null;
+        int tileSize = getTileSize();
 
         for (int y = 0; y < heightInTiles; y++) {
-            for (int x = 0; x < BACKPACK_WIDTH_IN_TILES; x++) {
-                var pos = new Position(x, y);
+            for (int x = 0; x < backpack.getWidth(); x++) {
+                var pos = Position.of(x, y);
                 boolean isUnlocked = backpack.isUnlocked(pos);
-                boolean canUnlock = state.getState() == State.CELL_UNLOCK && backpack.canUnlockCell(pos);
+                boolean canUnlock = unlockable != null && unlockable.get(y * backpack.getWidth() + x);
                 
                 // Draw cell background
                 if (canUnlock) {
                     // Unlockable cells are highlighted in green
-                    screen.setColor(new Color(0, 150, 0, 100));
+                    screen.setColor(UNLOCKABLE_CELL_BG);
                     screen.fillRect(
-                            x * 100,
-                            y * 100,
-                            100,
-                            100);
+                            x * tileSize,
+                            y * tileSize,
+                            tileSize,
+                            tileSize);
                 } else if (!isUnlocked) {
                     // Locked cells are dark gray
-                    screen.setColor(new Color(50, 50, 50));
+                    screen.setColor(LOCKED_CELL_BG);
                     screen.fillRect(
-                            x * 100,
-                            y * 100,
-                            100,
-                            100);
+                            x * tileSize,
+                            y * tileSize,
+                            tileSize,
+                            tileSize);
                 }
                 
                 // Draw cell border
-                screen.setColor(canUnlock ? Color.GREEN : (isUnlocked ? Color.GRAY : new Color(80, 80, 80)));
+                screen.setColor(canUnlock ? Color.GREEN : (isUnlocked ? Color.GRAY : LOCKED_CELL_BORDER));
                 screen.drawRect(
-                        x * 100,
-                        y * 100,
-                        100,
-                        100);
+                        x * tileSize,
+                        y * tileSize,
+                        tileSize,
+                        tileSize);
             }
         }
     }
@@ -279,7 +317,7 @@ public class View {
     private void drawDungeon(Graphics2D screen, Floor floor) {
         for (int y = 0; y < floor.getHeight(); y++) {
             for (int x = 0; x < floor.getWidth(); x++) {
-                Room room = floor.getRoom(new Position(x, y));
+                Room room = floor.getRoom(Position.of(x, y));
                 if (room != null) {
                     drawOneRoom(screen, room, x, y, BACKPACK_PIXEL_WIDTH);
                 }
@@ -407,7 +445,7 @@ public class View {
         int selectedIndex = combat.getSelectedEnemyIndex();
         int index = 0;
         for (Enemy enemy : enemies) {
-            EnemyAction intent = combat.getEnemyIntent(enemy);
+            EnemyAction intent = combat.getEnemyIntent(index);
             String intentStr = getIntentDisplay(intent, enemy);
 
             // Check if enemy is dead
@@ -771,7 +809,7 @@ public class View {
         var loot = state.getAvailableLoot();
         if (loot != null && !loot.isEmpty()) {
             String keys = "AZERTYUIOP".substring(0, Math.min(loot.size(), 10));
-            screen.drawString("Press " + keys + " to select item", boxX + POPUP_PADDING, boxY + 75);
+            screen.drawString("Press " + keys + " to select item, F to auto-pack", boxX + POPUP_PADDING, boxY + 75);
         }
 
         // Display loot items
@@ -1,9 +1,13 @@
 package fr.uge.backpackhero.gui.handlers;
 
+import java.util.List;
 import java.util.Objects;
 import com.github.forax.zen.ApplicationContext;
 import com.github.forax.zen.PointerEvent;
 import fr.uge.backpackhero.gui.View;
+import fr.uge.backpackhero.logic.BackpackArranger;
+import fr.uge.backpackhero.logic.Command;
+import fr.uge.backpackhero.logic.GameSession;
 import fr.uge.backpackhero.logic.GameState;
 import fr.uge.backpackhero.logic.State;
 import fr.uge.backpackhero.logic.PopupType;
@@ -11,28 +15,27 @@ import fr.uge.backpackhero.logic.MerchantMode;
 import fr.uge.backpackhero.model.level.Position;
 import fr.uge.backpackhero.model.level.RoomType;
 import fr.uge.backpackhero.model.item.Gold;
-import fr.uge.backpackhero.model.item.Item;
 
 /**
  * Handler for backpack interactions.
  * Manages item placement, rotation, and usage within the backpack.
  */
 public class BackpackHandler {
+    private final GameSession session;
     private final GameState state;
     private final View view;
-    private final CombatHandler combatHandler;
+    private final BackpackArranger arranger = new BackpackArranger();
 
     /**
      * Creates a new BackpackHandler.
      * 
-     * @param state         the game state
-     * @param view          the view to update
-     * @param combatHandler the combat handler for item usage in combat
+     * @param session the game session
+     * @param view    the view to update
      */
-    public BackpackHandler(GameState state, View view, CombatHandler combatHandler) {
-        this.state = Objects.requireNonNull(state);
+    public BackpackHandler(GameSession session, View view) {
+        this.session = Objects.requireNonNull(session);
+        this.state = session.getState();
         this.view = Objects.requireNonNull(view);
-        this.combatHandler = Objects.requireNonNull(combatHandler);
     }
 
     /**
@@ -49,37 +52,23 @@ public class BackpackHandler {
             return;
         }
 
-        int x = (int) (pointerEvent.location().x() / 100);
-        int y = (int) (pointerEvent.location().y() / 100);
+        int tileSize = view.getTileSize();
+        int x = (int) (pointerEvent.location().x() / tileSize);
+        int y = (int) (pointerEvent.location().y() / tileSize);
         if (y < 0)
             return;
-        var pos = new Position(x, y);
+        var pos = Position.of(x, y);
 
         // If in cell unlock mode, try to unlock the clicked cell
         if (state.getState() == State.CELL_UNLOCK) {
-            if (state.getBackpack().canUnlockCell(pos)) {
-                state.unlockCellAt(pos);
-                IO.println("Cell unlocked! " + state.getCellsToUnlock() + " remaining.");
-                if (state.getState() != State.CELL_UNLOCK) {
-                    IO.println("All cells unlocked!");
-                }
-            } else {
-                IO.println("Cannot unlock this cell. Choose an adjacent cell.");
-            }
+            session.execute(new Command.Unlock(pos));
             view.draw(context);
             return;
         }
 
         // If we are in loot screen mode with a selected loot item
         if (state.getState() == State.LOOT_SCREEN && state.getSelectedLootItem() != null) {
-            var lootItem = state.getSelectedLootItem();
-            if (state.getBackpack().place(lootItem, pos)) {
-                state.removeLootItem(lootItem);
-                state.setSelectedLootItem(null);
-                IO.println("Placed loot item: " + lootItem.getName());
-            } else {
-                IO.println("Cannot place item here.");
-            }
+            session.execute(new Command.TakeLoot(state.getSelectedLootItem(), pos));
             view.draw(context);
             return;
         }
@@ -95,23 +84,7 @@ public class BackpackHandler {
                 && state.getState() != State.COMBAT) {
             var room = state.getCurrentFloor().getRoom(state.getPosition());
             if (room != null && room.getType() == RoomType.MERCHANT) {
-                var shop = room.getMerchantItems();
-                if (shop != null) {
-                    var selectedItem = state.getSelectedMerchantItem();
-                    Integer price = shop.get(selectedItem);
-                    if (price != null) {
-                        if (!state.getBackpack().spendGold(price)) {
-                            IO.println("Not enough gold.");
-                        } else if (state.getBackpack().place(selectedItem, pos)) {
-                            shop.remove(selectedItem);
-                            state.setSelectedMerchantItem(null);
-                            IO.println("Bought: " + selectedItem.getName() + " for " + price + "g");
-                        } else {
-                            state.getBackpack().addGold(price);
-                            IO.println("Cannot place item here.");
-                        }
-                    }
-                }
+                session.execute(new Command.Buy(state.getSelectedMerchantItem(), pos));
                 view.draw(context);
                 return;
             }
@@ -133,19 +106,11 @@ public class BackpackHandler {
         }
 
         // In combat mode, use items
-        var optItem = state.getBackpack().getItemAt(pos);
-        if (optItem.isEmpty()) {
-            return;
-        }
-
-        var item = optItem.get();
-        if (!useItemInCombat(state, item)) {
-            IO.println("Cannot use item in combat.");
-            view.draw(context);
+        if (state.getBackpack().getItemAt(pos).isEmpty()) {
             return;
         }
-
-        combatHandler.afterHeroAction(context);
+        session.execute(new Command.UseItem(pos));
+        view.draw(context);
     }
 
     private void handleBackpackSellClick(ApplicationContext context, Position pos) {
@@ -197,7 +162,7 @@ public class BackpackHandler {
                 view.draw(context);
             } else {
                 // Try to move the item to the new position
-                if (backpack.move(selectedAnchor, pos)) {
+                if (state.getBackpackHistory().move(selectedAnchor, pos)) {
                     state.clearSelectedItem();
                 } else {
                     IO.println("Cannot move item to this position.");
@@ -220,15 +185,91 @@ public class BackpackHandler {
             return;
         }
 
-        var backpack = state.getBackpack();
-        if (!backpack.rotateItem(selectedItemAnchor)) {
+        if (!state.getBackpackHistory().rotate(selectedItemAnchor)) {
             IO.println("Cannot rotate item in current position.");
         }
         view.draw(context);
     }
 
-    private static boolean useItemInCombat(GameState state, Item item) {
-        return state.getCombatEngine().useItem(state.getHero(), item);
+    /**
+     * Handles the request to undo the last backpack edit.
+     * 
+     * @param context the application context
+     */
+    public void handleUndo(ApplicationContext context) {
+        Objects.requireNonNull(context, "context cannot be null");
+        if (!canEditBackpack()) {
+            return;
+        }
+        if (!state.getBackpackHistory().undo()) {
+            IO.println("Nothing to undo.");
+            return;
+        }
+        state.clearSelectedItem();
+        view.draw(context);
+    }
+
+    /**
+     * Handles the request to redo the last undone backpack edit.
+     * 
+     * @param context the application context
+     */
+    public void handleRedo(ApplicationContext context) {
+        Objects.requireNonNull(context, "context cannot be null");
+        if (!canEditBackpack()) {
+            return;
+        }
+        if (!state.getBackpackHistory().redo()) {
+            IO.println("Nothing to redo.");
+            return;
+        }
+        state.clearSelectedItem();
+        view.draw(context);
+    }
+
+    /**
+     * Handles the request to rearrange the items of the backpack so that the
+     * free cells form the largest possible region. The whole rearrangement is
+     * one transaction of the backpack history, so it can be undone at once.
+     * 
+     * @param context the application context
+     */
+    public void handleAutoArrange(ApplicationContext context) {
+        Objects.requireNonNull(context, "context cannot be null");
+        if (!canEditBackpack()) {
+            return;
+        }
+        var result = arranger.arrange(state.getBackpack());
+        if (!result.improves()) {
+            IO.println("The backpack is already well arranged.");
+            return;
+        }
+        var history = state.getBackpackHistory();
+        history.begin();
+        for (var anchor : List.copyOf(state.getBackpack().getItems().keySet())) {
+            history.remove(anchor);
+        }
+        for (var placement : result.placements()) {
+            var item = placement.item();
+            var shape = item.getShape();
+            item.setShape(placement.shape());
+            if (!history.place(item, placement.anchor())) {
+                item.setShape(shape);
+                history.rollback();
+                IO.println("Cannot arrange the backpack.");
+                return;
+            }
+        }
+        history.commit();
+        state.clearSelectedItem();
+        IO.println("Backpack arranged: largest free region " + result.currentFree() + " -> "
+                + result.largestFree() + " cells.");
+        view.draw(context);
+    }
+
+    private boolean canEditBackpack() {
+        return state.getState() != State.COMBAT && state.getState() != State.HEALER_PROMPT
+                && state.getActivePopup() == null && !state.isGameOver() && !state.isVictory();
     }
 
     /**
@@ -282,7 +323,7 @@ public class BackpackHandler {
         var item = state.getDiscardConfirmItem();
         var anchor = state.getDiscardConfirmAnchor();
         if (item != null && anchor != null) {
-            state.getBackpack().removeItem(anchor);
+            state.getBackpackHistory().remove(anchor);
             state.clearSelectedItem();
             IO.println("Discarded: " + item.getName());
         }
@@ -3,29 +3,31 @@ package fr.uge.backpackhero.gui.handlers;
 import java.util.Objects;
 import com.github.forax.zen.ApplicationContext;
 import fr.uge.backpackhero.gui.View;
-import fr.uge.backpackhero.logic.CombatEngine;
-import fr.uge.backpackhero.logic.GameState;
+import fr.uge.backpackhero.logic.CombatEstimator;
+import fr.uge.backpackhero.logic.CombatSimulation;
+import fr.uge.backpackhero.logic.Command;
+import fr.uge.backpackhero.logic.GameSession;
 import fr.uge.backpackhero.logic.State;
-import fr.uge.backpackhero.model.entity.Enemy;
-import fr.uge.backpackhero.model.entity.Hero;
-import fr.uge.backpackhero.model.loot.LootTables;
+import fr.uge.backpackhero.logic.TurnPlanner;
 
 /**
  * Handler for combat interactions.
  * Manages turn progression and combat actions.
  */
 public class CombatHandler {
-    private final GameState state;
+    private final GameSession session;
     private final View view;
+    private final CombatEstimator estimator = new CombatEstimator();
+    private final TurnPlanner planner = new TurnPlanner();
 
     /**
      * Creates a new CombatHandler.
      * 
-     * @param state the game state
-     * @param view  the view to update
+     * @param session the game session
+     * @param view    the view to update
      */
-    public CombatHandler(GameState state, View view) {
-        this.state = Objects.requireNonNull(state);
+    public CombatHandler(GameSession session, View view) {
+        this.session = Objects.requireNonNull(session);
         this.view = Objects.requireNonNull(view);
     }
 
@@ -36,101 +38,56 @@ public class CombatHandler {
      */
     public void handleEndTurn(ApplicationContext context) {
         Objects.requireNonNull(context, "context cannot be null");
-        if (state.getState() != State.COMBAT) {
-            return;
+        if (session.execute(new Command.EndTurn())) {
+            view.draw(context);
         }
-
-        state.getCombatEngine().endHeroTurn(state.getHero());
-        IO.println("Turn ended.");
-
-        processEnemiesTurn(context);
-        view.draw(context);
     }
 
     /**
-     * Handles game logic after a hero action (e.g., using an item).
+     * Handles the request for the chance of winning the current combat.
      * 
      * @param context the application context
      */
-    public void afterHeroAction(ApplicationContext context) {
-        if (checkEndOfCombat(context))
+    public void handleWinEstimate(ApplicationContext context) {
+        Objects.requireNonNull(context, "context cannot be null");
+        var state = session.getState();
+        if (state.getState() != State.COMBAT) {
             return;
-        processEnemiesTurn(context);
-        view.draw(context);
+        }
+        var estimate = estimator.estimate(state);
+        IO.println("Win chance: " + Math.round(estimate.winRate() * 100) + "%, expected HP left: "
+                + Math.round(estimate.expectedHp()) + "/" + state.getHero().getMaxHp() + " ("
+                + estimate.rollouts() + " simulated fights)");
     }
 
-    private void processEnemiesTurn(ApplicationContext context) {
-        var combat = state.getCombatEngine();
-        var hero = state.getHero();
-        var enemies = combat.getCurrentEnemies();
-        if (hero.getEnergy() != 0) {
+    /**
+     * Handles the request for a suggested turn: the items to use this turn, in
+     * order, and the enemy each weapon should hit.
+     * 
+     * @param context the application context
+     */
+    public void handleSuggestTurn(ApplicationContext context) {
+        Objects.requireNonNull(context, "context cannot be null");
+        var state = session.getState();
+        if (state.getState() != State.COMBAT) {
             return;
         }
-        for (Enemy enemy : enemies) {
-            if (enemy.isAlive()) {
-                var action = combat.getEnemyIntent(enemy);
-                if (action != null) {
-                    combat.enemyTurn(hero, enemy, action);
-                }
-            }
-        }
-        if (!hero.isAlive()) {
-            IO.println("The hero is dead.");
-            state.setGameOver(true);
-            state.setState(State.EXPLORATION);
-            combat.endCombat();
-            view.draw(context);
+        var combat = CombatSimulation.of(state.getCombatEngine(), state.getHero(), state.getBackpack());
+        var plan = planner.plan(combat);
+        if (plan.steps().isEmpty()) {
+            IO.println("Suggested turn: nothing to use, end the turn");
             return;
         }
-        combat.decideEnemyIntents();
-        combat.heroTurn(hero, state.getBackpack());
-    }
-
-    private boolean checkEndOfCombat(ApplicationContext context) {
-        CombatEngine combat = state.getCombatEngine();
-        Hero hero = state.getHero();
-
-        if (!combat.isCombatOver(hero)) {
-            return false;
-        }
-
-        if (!hero.isAlive()) {
-            IO.println("The hero is dead.");
-            state.setGameOver(true);
-            state.setState(State.EXPLORATION);
-            combat.endCombat();
-            view.draw(context);
-            return true;
-        }
-
-        // Calculate rewards
-        var lootItems = LootTables.generateLootFromEnemies(combat.getCurrentEnemies(), state.getFloor());
-        int goldReward = combat.calculateGoldReward();
-        int xpReward = combat.calculateXpReward();
-
-        // Give rewards
-        state.getBackpack().addGold(goldReward);
-        int levelsGained = hero.addXp(xpReward);
-
-        // Handle level up - enter cell unlock mode
-        if (levelsGained > 0) {
-            // Calculate total cells to unlock for all levels
-            int totalCells = 0;
-            for (int i = 0; i < levelsGained; i++) {
-                int levelNum = hero.getLevel() - levelsGained + i + 1;
-                totalCells += (levelNum % 2 == 0) ? 4 : 3;
+        var enemies = state.getCombatEngine().getCurrentEnemies();
+        var builder = new StringBuilder("Suggested turn:");
+        for (var step : plan.steps()) {
+            builder.append(' ').append(combat.getItem(step.item()).getName());
+            if (step.target() >= 0) {
+                builder.append(" -> ").append(enemies.get(step.target()).getName());
             }
-            state.startCellUnlockMode(totalCells);
-            IO.println("LEVEL UP! Level " + hero.getLevel() + " - Choose " + totalCells + " cells to unlock!");
-        }
-
-        state.openLootScreen(lootItems);
-        IO.println("Combat won! Gained " + goldReward + " gold, " + xpReward + " XP and " + lootItems.size()
-                + " items to choose from.");
-        if (levelsGained > 0) {
-            IO.println("You gained " + levelsGained + " level(s)! Now level " + hero.getLevel());
+            builder.append(',');
         }
-        view.draw(context);
-        return true;
+        builder.setLength(builder.length() - 1);
+        IO.println(builder + " (deals " + plan.damageDealt() + ", prevents " + plan.damagePrevented() + ")");
     }
 }
@@ -3,7 +3,8 @@ package fr.uge.backpackhero.gui.handlers;
 import java.util.Objects;
 import com.github.forax.zen.ApplicationContext;
 import fr.uge.backpackhero.gui.View;
-import fr.uge.backpackhero.logic.GameState;
+import fr.uge.backpackhero.logic.Command;
+import fr.uge.backpackhero.logic.GameSession;
 import fr.uge.backpackhero.logic.State;
 
 /**
@@ -11,17 +12,17 @@ import fr.uge.backpackhero.logic.State;
  * Manages the healer prompt logic.
  */
 public class HealerHandler {
-    private final GameState state;
+    private final GameSession session;
     private final View view;
 
     /**
      * Creates a new HealerHandler.
      * 
-     * @param state the game state
-     * @param view  the view to update
+     * @param session the game session
+     * @param view    the view to update
      */
-    public HealerHandler(GameState state, View view) {
-        this.state = Objects.requireNonNull(state);
+    public HealerHandler(GameSession session, View view) {
+        this.session = Objects.requireNonNull(session);
         this.view = Objects.requireNonNull(view);
     }
 
@@ -32,23 +33,9 @@ public class HealerHandler {
      */
     public void handleHealerAccept(ApplicationContext context) {
         Objects.requireNonNull(context, "context cannot be null");
-        if (state.getState() != State.HEALER_PROMPT)
+        if (session.getState().getState() != State.HEALER_PROMPT)
             return;
-
-        int cost = state.getHealerCost();
-        int heal = state.getHealerHealAmount();
-
-        if (!state.getBackpack().spendGold(cost)) {
-            IO.println("Not enough gold.");
-            view.draw(context);
-            return;
-        }
-
-        var hero = state.getHero();
-        int before = hero.getHp();
-        hero.setHp(before + heal);
-
-        state.closeHealerPrompt();
+        session.execute(new Command.Heal(true));
         view.draw(context);
     }
 
@@ -59,9 +46,8 @@ public class HealerHandler {
      */
     public void handleHealerDecline(ApplicationContext context) {
         Objects.requireNonNull(context, "context cannot be null");
-        if (state.getState() != State.HEALER_PROMPT)
-            return;
-        state.closeHealerPrompt();
-        view.draw(context);
+        if (session.execute(new Command.Heal(false))) {
+            view.draw(context);
+        }
     }
 }
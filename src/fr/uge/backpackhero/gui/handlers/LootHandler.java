@@ -4,10 +4,10 @@ import java.util.Objects;
 import com.github.forax.zen.ApplicationContext;
 import com.github.forax.zen.PointerEvent;
 import fr.uge.backpackhero.gui.View;
+import fr.uge.backpackhero.logic.Command;
+import fr.uge.backpackhero.logic.GameSession;
 import fr.uge.backpackhero.logic.GameState;
 import fr.uge.backpackhero.logic.State;
-import fr.uge.backpackhero.model.level.Room;
-import fr.uge.backpackhero.model.level.RoomType;
 import fr.uge.backpackhero.model.item.Item;
 
 /**
@@ -15,17 +15,19 @@ import fr.uge.backpackhero.model.item.Item;
  * Manages item selection and collection from the loot screen.
  */
 public class LootHandler {
+    private final GameSession session;
     private final GameState state;
     private final View view;
 
     /**
      * Creates a new LootHandler.
      * 
-     * @param state the game state
-     * @param view  the view to update
+     * @param session the game session
+     * @param view    the view to update
      */
-    public LootHandler(GameState state, View view) {
-        this.state = Objects.requireNonNull(state);
+    public LootHandler(GameSession session, View view) {
+        this.session = Objects.requireNonNull(session);
+        this.state = session.getState();
         this.view = Objects.requireNonNull(view);
     }
 
@@ -36,23 +38,9 @@ public class LootHandler {
      */
     public void handleLootContinue(ApplicationContext context) {
         Objects.requireNonNull(context, "context cannot be null");
-        if (state.getState() != State.LOOT_SCREEN)
-            return;
-
-        state.closeLootScreen();
-
-        // Only end combat if we were in combat
-        if (state.getState() == State.LOOT_SCREEN) {
-            var combat = state.getCombatEngine();
-            combat.endCombat();
+        if (session.execute(new Command.LeaveLoot())) {
+            view.draw(context);
         }
-
-        var floor = state.getCurrentFloor();
-        var pos = state.getPosition();
-        floor.setRoom(pos, new Room(RoomType.CORRIDOR, null, null, null, 0, 0));
-
-        IO.println("Loot screen closed.");
-        view.draw(context);
     }
 
     /**
@@ -103,4 +91,17 @@ public class LootHandler {
             view.draw(context);
         }
     }
+
+    /**
+     * Puts the most valuable combination of the remaining loot items in the
+     * backpack, rotating them if needed.
+     * 
+     * @param context the application context
+     */
+    public void handleLootAutoPack(ApplicationContext context) {
+        Objects.requireNonNull(context, "context cannot be null");
+        if (session.execute(new Command.PackLoot())) {
+            view.draw(context);
+        }
+    }
 }
@@ -5,6 +5,8 @@ import java.util.Objects;
 import com.github.forax.zen.ApplicationContext;
 import com.github.forax.zen.PointerEvent;
 import fr.uge.backpackhero.gui.View;
+import fr.uge.backpackhero.logic.Command;
+import fr.uge.backpackhero.logic.GameSession;
 import fr.uge.backpackhero.logic.GameState;
 import fr.uge.backpackhero.logic.State;
 import fr.uge.backpackhero.logic.PopupType;
@@ -16,17 +18,19 @@ import fr.uge.backpackhero.model.item.Item;
  * Manages buying and selling items.
  */
 public class MerchantHandler {
+    private final GameSession session;
     private final GameState state;
     private final View view;
 
     /**
      * Creates a new MerchantHandler.
      * 
-     * @param state the game state
-     * @param view  the view to update
+     * @param session the game session
+     * @param view    the view to update
      */
-    public MerchantHandler(GameState state, View view) {
-        this.state = Objects.requireNonNull(state);
+    public MerchantHandler(GameSession session, View view) {
+        this.session = Objects.requireNonNull(session);
+        this.state = session.getState();
         this.view = Objects.requireNonNull(view);
     }
 
@@ -66,13 +70,9 @@ public class MerchantHandler {
         if (state.getActivePopup() != PopupType.SELL_CONFIRM)
             return;
 
-        var item = state.getSellConfirmItem();
         var anchor = state.getSellConfirmAnchor();
-        if (item != null && anchor != null) {
-            int sellPrice = item.getPrice() / 2;
-            state.getBackpack().removeItem(anchor);
-            state.getBackpack().addGold(sellPrice);
-            IO.println("Sold: " + item.getName() + " for " + sellPrice + "g");
+        if (anchor != null) {
+            session.execute(new Command.Sell(anchor));
         }
         state.closeSellConfirm();
     }
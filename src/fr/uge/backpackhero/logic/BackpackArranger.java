@@ -0,0 +1,370 @@
+package fr.uge.backpackhero.logic;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import fr.uge.backpackhero.model.item.Backpack;
+import fr.uge.backpackhero.model.item.CellMask;
+import fr.uge.backpackhero.model.item.Item;
+import fr.uge.backpackhero.model.item.Placement;
+import fr.uge.backpackhero.model.level.Position;
+
+/**
+ * Finds a new arrangement of all the items of a backpack that leaves the
+ * largest possible contiguous region of free cells, so that big items fit
+ * again in a fragmented backpack.
+ * <p>
+ * Each attempt packs the items one by one, biggest first, each in the legal
+ * position and rotation closest to a corner of the backpack; the legal
+ * positions of an orientation are all computed at once with
+ * {@link CellMask#fitAnchors(CellMask, fr.uge.backpackhero.model.item.Shape, int)}.
+ * Attempts cycle through the four corners, both scan directions, and
+ * shuffled item orders until the time budget is spent or the free region is
+ * as big as it can be, and the best arrangement is kept. An arrangement is only
+ * returned if it beats the current one.
+ * <p>
+ * The attempts are the branches of the root of a {@link PlacementSearch}, so
+ * given a {@link ForkJoinPool} they run in parallel on the pool.
+ *
+ */
+public final class BackpackArranger {
+
+    /** Default time budget, one frame at 60 frames per second. */
+    private static final Duration DEFAULT_TIME_BUDGET = Duration.ofMillis(16);
+    /** Number of scan orders: four corners, rows first or columns first. */
+    private static final int SCAN_ORDERS = 8;
+    /** Number of attempts of a search, far more than a frame has time for on a small backpack. */
+    private static final int ATTEMPTS = 4096;
+
+    private final PlacementSearch search;
+
+    /**
+     * The outcome of an arrangement search.
+     *
+     * @param placements   the placements of every item of the backpack, empty if
+     *                     no better arrangement was found
+     * @param largestFree  the size of the largest free region of the arrangement
+     * @param currentFree  the size of the largest free region before arranging
+     */
+    public record Result(List<Placement> placements, int largestFree, int currentFree) {
+
+        /**
+         * Creates a new Result.
+         *
+         * @param placements  the placements of every item of the backpack
+         * @param largestFree the size of the largest free region of the arrangement
+         * @param currentFree the size of the largest free region before arranging
+         */
+        public Result {
+            placements = List.copyOf(placements);
+        }
+
+        /**
+         * Checks if the arrangement is better than the current one.
+         *
+         * @return true if applying the placements enlarges the largest free region
+         */
+        public boolean improves() {
+            return largestFree > currentFree;
+        }
+    }
+
+    /**
+     * Creates a new BackpackArranger whose attempts run in parallel on a
+     * fork/join pool.
+     *
+     * @param timeBudget the maximum time spent in one search
+     * @param pool       the pool running the attempts, or null to run them on
+     *                   the calling thread
+     */
+    public BackpackArranger(Duration timeBudget, ForkJoinPool pool) {
+        // Only the attempts are worth forking, each one is a single line of placements
+        this.search = new PlacementSearch(timeBudget, pool, 1);
+    }
+
+    /**
+     * Creates a new BackpackArranger.
+     *
+     * @param timeBudget the maximum time spent in one search
+     */
+    public BackpackArranger(Duration timeBudget) {
+        this(timeBudget, null);
+    }
+
+    /**
+     * Creates a new BackpackArranger with a budget of one frame, running its
+     * attempts on the common pool.
+     */
+    public BackpackArranger() {
+        this(DEFAULT_TIME_BUDGET, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Searches an arrangement of all the items of the backpack that maximizes
+     * the largest region of free cells. The backpack is not modified.
+     *
+     * @param backpack the backpack to arrange
+     * @return the best arrangement found
+     */
+    public Result arrange(Backpack backpack) {
+        Objects.requireNonNull(backpack, "backpack cannot be null");
+        int width = backpack.getWidth();
+        int current = largestRegion(backpack.getFreeCells(), width);
+
+        var entries = new ArrayList<>(backpack.getItems().entrySet());
+        entries.sort(Comparator.<Map.Entry<Position, Item>>comparingInt(e -> -e.getValue().getShape().getCellCount())
+                .thenComparingInt(e -> e.getKey().y() * width + e.getKey().x()));
+        var items = entries.stream().map(Map.Entry::getValue).toArray(Item[]::new);
+
+        var outcome = search.search(new Attempt(backpack, items));
+        if (outcome.value() <= current) {
+            return new Result(List.of(), current, current);
+        }
+        return new Result(outcome.solution(), outcome.value(), current);
+    }
+
+    /**
+     * Swaps some neighbouring items, so that later attempts try other orders
+     * while still placing the biggest items roughly first.
+     */
+    private static void shuffleNeighbours(Item[] items, Random random) {
+        for (int i = 1; i < items.length; i++) {
+            if (random.nextInt(3) == 0) {
+                var item = items[i];
+                items[i] = items[i - 1];
+                items[i - 1] = item;
+            }
+        }
+    }
+
+    /**
+     * Returns the size of the largest 4-connected region of set cells.
+     */
+    static int largestRegion(CellMask cells, int width) {
+        var seen = new CellMask(cells.size());
+        var queue = new int[cells.size()];
+        int largest = 0;
+        for (int start = cells.nextSetBit(0); start >= 0; start = cells.nextSetBit(start + 1)) {
+            if (seen.get(start)) {
+                continue;
+            }
+            seen.set(start);
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = start;
+            while (head < tail) {
+                int index = queue[head++];
+                int x = index % width;
+                tail = visit(cells, seen, queue, tail, x > 0 ? index - 1 : -1);
+                tail = visit(cells, seen, queue, tail, x < width - 1 ? index + 1 : -1);
+                tail = visit(cells, seen, queue, tail, index - width);
+                tail = visit(cells, seen, queue, tail, index + width < cells.size() ? index + width : -1);
+            }
+            largest = Math.max(largest, tail);
+        }
+        return largest;
+    }
+
+    private static int visit(CellMask cells, CellMask seen, int[] queue, int tail, int index) {
+        if (index < 0 || !cells.get(index) || seen.get(index)) {
+            return tail;
+        }
+        seen.set(index);
+        queue[tail] = index;
+        return tail + 1;
+    }
+
+    /**
+     * A node of the arrangement search. The root has one branch per attempt,
+     * that sets its scan order and item order; then each level packs the next
+     * item as close as possible to the corner of the scan order, its only
+     * branch.
+     */
+    private static final class Attempt implements PlacementSearch.Node<Attempt, List<Placement>> {
+        private final Item[] items; // biggest first
+        private final int width;
+        private final int height;
+        private final CellMask unlocked;
+        private final int target; // no arrangement can leave more free cells than that in one region
+        private final CellMask free;
+        private final CellMask anchors;
+        private final CellMask legal;
+        private final Item[] order;
+        private final int[] placedAnchors;
+        private final int[] placedRotations;
+        private int scanOrder;
+        private int depth; // 0 at the root, then 1 + the number of items packed
+
+        private Attempt(Backpack backpack, Item[] items) {
+            this.items = items;
+            this.width = backpack.getWidth();
+            this.height = backpack.getHeight();
+            this.unlocked = backpack.getUnlockedMask();
+            int usedArea = 0;
+            for (var item : items) {
+                usedArea += item.getShape().getCellCount();
+            }
+            this.target = unlocked.cardinality() - usedArea;
+            this.free = new CellMask(unlocked.size());
+            this.anchors = new CellMask(unlocked.size());
+            this.legal = new CellMask(unlocked.size());
+            this.order = items.clone();
+            this.placedAnchors = new int[items.length];
+            this.placedRotations = new int[items.length];
+        }
+
+        private Attempt(Attempt other) {
+            this.items = other.items;
+            this.width = other.width;
+            this.height = other.height;
+            this.unlocked = other.unlocked;
+            this.target = other.target;
+            this.free = other.free.copy();
+            this.anchors = other.anchors.copy();
+            this.legal = new CellMask(unlocked.size());
+            this.order = other.order.clone();
+            this.placedAnchors = other.placedAnchors.clone();
+            this.placedRotations = other.placedRotations.clone();
+            this.scanOrder = other.scanOrder;
+            this.depth = other.depth;
+        }
+
+        @Override
+        public int value() {
+            return depth == items.length + 1 ? largestRegion(free, width) : PlacementSearch.NO_VALUE;
+        }
+
+        @Override
+        public int bound() {
+            return target;
+        }
+
+        @Override
+        public int branches() {
+            if (depth == 0) {
+                return ATTEMPTS;
+            }
+            return depth <= items.length ? 1 : 0;
+        }
+
+        @Override
+        public boolean enter(int branch) {
+            if (depth == 0) {
+                startAttempt(branch);
+                depth = 1;
+                return true;
+            }
+            if (!placeClosest(depth - 1)) {
+                return false;
+            }
+            depth++;
+            return true;
+        }
+
+        @Override
+        public void leave(int branch) {
+            depth--;
+            if (depth == 0) {
+                return;
+            }
+            var oriented = order[depth - 1].getShape().rotate(placedRotations[depth - 1]);
+            int anchor = placedAnchors[depth - 1];
+            anchors.clear(anchor);
+            for (int row = 0; row < oriented.getHeight(); row++) {
+                free.orWindow(anchor + row * width, oriented.getRowMask(row));
+            }
+        }
+
+        @Override
+        public Attempt copy() {
+            return new Attempt(this);
+        }
+
+        @Override
+        public List<Placement> solution() {
+            var placements = new ArrayList<Placement>(items.length);
+            for (int i = 0; i < depth - 1; i++) {
+                int anchor = placedAnchors[i];
+                placements.add(new Placement(order[i], Position.of(anchor % width, anchor / width),
+                        placedRotations[i]));
+            }
+            return placements;
+        }
+
+        /**
+         * Starts an attempt with an empty backpack: the first attempts try each
+         * scan order with the items biggest first, the next ones shuffle the
+         * items more and more.
+         */
+        private void startAttempt(int attempt) {
+            System.arraycopy(items, 0, order, 0, items.length);
+            if (attempt >= SCAN_ORDERS) {
+                var random = new Random(attempt);
+                for (int i = 0; i < attempt / SCAN_ORDERS; i++) {
+                    shuffleNeighbours(order, random);
+                }
+            }
+            scanOrder = attempt % SCAN_ORDERS;
+            free.copyFrom(unlocked);
+            anchors.clearAll();
+        }
+
+        /**
+         * Packs an item of the order in the legal position closest to the
+         * corner of the scan order; returns false if it does not fit.
+         */
+        private boolean placeClosest(int position) {
+            var shape = order[position].getShape();
+            long bestKey = Long.MAX_VALUE;
+            int bestAnchor = -1;
+            int bestRotation = 0;
+            for (int rotation = 0; rotation < 4; rotation++) {
+                var oriented = shape.rotate(rotation);
+                if (shape.isRedundantRotation(rotation) || !legal.fitAnchors(free, oriented, width)) {
+                    continue;
+                }
+                legal.andNot(anchors);
+                // In the first scan order the keys grow with the index, so only the first anchor matters
+                int last = scanOrder == 0 ? legal.nextSetBit(0) : legal.size() - 1;
+                for (int index = legal.nextSetBit(0); index >= 0 && index <= last;
+                        index = legal.nextSetBit(index + 1)) {
+                    long key = scanKey(index % width, index / width, oriented.getWidth(), oriented.getHeight(),
+                            scanOrder);
+                    if (key < bestKey) {
+                        bestKey = key;
+                        bestAnchor = index;
+                        bestRotation = rotation;
+                    }
+                }
+            }
+            if (bestAnchor < 0) {
+                return false;
+            }
+            var oriented = shape.rotate(bestRotation);
+            anchors.set(bestAnchor);
+            for (int row = 0; row < oriented.getHeight(); row++) {
+                free.andNotWindow(bestAnchor + row * width, oriented.getRowMask(row));
+            }
+            placedAnchors[position] = bestAnchor;
+            placedRotations[position] = bestRotation;
+            return true;
+        }
+
+        /**
+         * Orders the positions of a shape by distance to a corner: the corner
+         * is given by the two low bits of scanOrder and the third bit scans
+         * columns before rows.
+         */
+        private long scanKey(int x, int y, int shapeWidth, int shapeHeight, int scanOrder) {
+            int dx = (scanOrder & 1) == 0 ? x : width - x - shapeWidth;
+            int dy = (scanOrder & 2) == 0 ? y : height - y - shapeHeight;
+            return (scanOrder & 4) == 0 ? (long) dy * width + dx : (long) dx * height + dy;
+        }
+    }
+}
@@ -0,0 +1,572 @@
+package fr.uge.backpackhero.logic;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.random.RandomGenerator;
+
+import fr.uge.backpackhero.model.entity.Enemy;
+import fr.uge.backpackhero.model.entity.EnemyTemplate;
+import fr.uge.backpackhero.model.entity.Hero;
+import fr.uge.backpackhero.model.item.Armor;
+import fr.uge.backpackhero.model.item.Item;
+import fr.uge.backpackhero.model.item.Weapon;
+
+/**
+ * Plays many combats side by side, for balance sweeps that need millions of
+ * fights.
+ * The combats are stored as columns of primitive arrays: combat {@code k}
+ * owns the slots {@code k * maxEnemies} to {@code k * maxEnemies + n - 1} of the
+ * enemy arrays and the slots from {@code k * maxItems} of the item arrays, and
+ * {@link #step()} plays one round of every running combat in a single loop
+ * over these arrays, without creating any object.
+ * <p>
+ * The rules are those of {@link CombatEngine}: weapons hit through the block
+ * of the enemy, armors add to the block of the hero, and at the end of the
+ * round each alive enemy drops its block then attacks through the block of the
+ * hero or defends. The hero follows a fixed policy: each round it goes through
+ * its weapons and armors in order and uses each one it can still pay for,
+ * weapons hitting the first alive enemy, like {@link CombatEngine#useItem} does
+ * with the first target. Each combat draws its enemy intents from its own
+ * random sequence, made from the seed given to {@link #add}.
+ * <p>
+ * Enemies keep their {@link EnemyTemplate}, and combats against the kinds
+ * of the game can be added from the ids of their registered templates without
+ * creating any enemy.
+ * <p>
+ * {@link #crossCheck()} replays the combats with a {@link CombatEngine}, real
+ * enemies and the same random sequences, and fails if an outcome differs.
+ *
+ */
+public final class BatchCombatSimulator {
+
+    private static final byte RUNNING = 0;
+    private static final byte WON = 1;
+    private static final byte LOST = 2;
+    private static final byte NO_INTENT = -1;
+    private static final byte ATTACK = (byte) EnemyAction.ATTACK.ordinal();
+    /** Increment of the random sequences, the golden gamma of SplitMix64. */
+    private static final long GAMMA = 0x9e3779b97f4a7c15L;
+    /** Number of combats played together by {@link #run}. */
+    private static final int BLOCK_SIZE = 256;
+
+    private final int capacity;
+    private final int maxEnemies;
+    private final int maxItems;
+    private int size;
+
+    // One slot per combat
+    private final int[] heroHp;
+    private final int[] heroMaxEnergy;
+    private final int[] enemyCount;
+    private final int[] itemCount;
+    private final int[] turns;
+    private final byte[] status;
+    private final long[] randomState;
+    // maxEnemies slots per combat
+    private final int[] enemyHp;
+    private final int[] enemyBlock;
+    private final int[] enemyAttack;
+    private final int[] enemyDefense;
+    private final byte[] intents;
+    // maxItems slots per combat; weapons have no protection, armors no damage
+    private final int[] itemCost;
+    private final int[] itemDamage;
+    private final int[] itemProtection;
+    private final boolean[] itemIsWeapon;
+
+    // Start of each combat, only read by crossCheck
+    private final long[] seeds;
+    private final int[] startHeroHp;
+    private final int[] startEnemyHp;
+    private final int[] startEnemyBlock;
+    private final EnemyTemplate[] startEnemyTemplate;
+    private final Item[] items;
+
+    /**
+     * Creates an empty BatchCombatSimulator.
+     *
+     * @param capacity   the largest number of combats
+     * @param maxEnemies the largest number of enemies in one combat
+     * @param maxItems   the largest number of weapons and armors of one hero
+     */
+    public BatchCombatSimulator(int capacity, int maxEnemies, int maxItems) {
+        if (capacity <= 0 || maxEnemies <= 0 || maxItems < 0) {
+            throw new IllegalArgumentException("capacity and maxEnemies must be positive, maxItems cannot be negative");
+        }
+        this.capacity = capacity;
+        this.maxEnemies = maxEnemies;
+        this.maxItems = maxItems;
+        this.heroHp = new int[capacity];
+        this.heroMaxEnergy = new int[capacity];
+        this.enemyCount = new int[capacity];
+        this.itemCount = new int[capacity];
+        this.turns = new int[capacity];
+        this.status = new byte[capacity];
+        this.randomState = new long[capacity];
+        this.enemyHp = new int[Math.multiplyExact(capacity, maxEnemies)];
+        this.enemyBlock = new int[enemyHp.length];
+        this.enemyAttack = new int[enemyHp.length];
+        this.enemyDefense = new int[enemyHp.length];
+        this.intents = new byte[enemyHp.length];
+        this.itemCost = new int[Math.multiplyExact(capacity, maxItems)];
+        this.itemDamage = new int[itemCost.length];
+        this.itemProtection = new int[itemCost.length];
+        this.itemIsWeapon = new boolean[itemCost.length];
+        this.seeds = new long[capacity];
+        this.startHeroHp = new int[capacity];
+        this.startEnemyHp = new int[enemyHp.length];
+        this.startEnemyBlock = new int[enemyHp.length];
+        this.startEnemyTemplate = new EnemyTemplate[enemyHp.length];
+        this.items = new Item[itemCost.length];
+    }
+
+    /**
+     * Adds a combat, copying the current state of the hero and the enemies.
+     * Items of the list that are neither weapons nor armors are ignored, and a
+     * combat whose enemies are all dead is won without playing any round.
+     *
+     * @param hero    the hero of the combat
+     * @param enemies the enemies of the combat
+     * @param loadout the items of the hero
+     * @param seed    the seed of the enemy intents of this combat
+     * @return the index of the combat
+     * @throws IllegalStateException    if the simulator is full
+     * @throws IllegalArgumentException if there are too many enemies or items
+     */
+    public int add(Hero hero, List<Enemy> enemies, List<? extends Item> loadout, long seed) {
+        Objects.requireNonNull(hero, "hero cannot be null");
+        Objects.requireNonNull(enemies, "enemies cannot be null");
+        Objects.requireNonNull(loadout, "loadout cannot be null");
+        checkCombat(enemies.size());
+        int k = size;
+        addItems(k, loadout);
+        int firstEnemy = k * maxEnemies;
+        for (int j = 0; j < enemies.size(); j++) {
+            var enemy = enemies.get(j);
+            setEnemy(firstEnemy + j, enemy.getTemplate(), enemy.getHp(), enemy.getBlock(), enemy.getAttack(),
+                    enemy.getDefense());
+        }
+        return addHero(k, hero, enemies.size(), seed);
+    }
+
+    /**
+     * Adds a combat against new enemies of the given kinds, without creating
+     * the enemies.
+     * Items of the list that are neither weapons nor armors are ignored.
+     *
+     * @param hero      the hero of the combat
+     * @param templates the ids of the registered {@link EnemyTemplate} of the
+     *                  enemies
+     * @param loadout   the items of the hero
+     * @param seed      the seed of the enemy intents of this combat
+     * @return the index of the combat
+     * @throws IllegalStateException     if the simulator is full
+     * @throws IllegalArgumentException  if there are too many enemies or items
+     * @throws IndexOutOfBoundsException if no template has one of the ids
+     */
+    public int add(Hero hero, int[] templates, List<? extends Item> loadout, long seed) {
+        Objects.requireNonNull(hero, "hero cannot be null");
+        Objects.requireNonNull(templates, "templates cannot be null");
+        Objects.requireNonNull(loadout, "loadout cannot be null");
+        checkCombat(templates.length);
+        int k = size;
+        addItems(k, loadout);
+        int firstEnemy = k * maxEnemies;
+        for (int j = 0; j < templates.length; j++) {
+            var template = EnemyTemplate.byId(templates[j]);
+            setEnemy(firstEnemy + j, template, template.getMaxHp(), 0, template.getAttack(),
+                    template.getDefense());
+        }
+        return addHero(k, hero, templates.length, seed);
+    }
+
+    private void checkCombat(int enemies) {
+        if (size == capacity) {
+            throw new IllegalStateException("the simulator is full");
+        }
+        if (enemies == 0 || enemies > maxEnemies) {
+            throw new IllegalArgumentException("a combat needs 1 to " + maxEnemies + " enemies");
+        }
+    }
+
+    private void addItems(int k, List<? extends Item> loadout) {
+        int firstItem = k * maxItems;
+        int count = 0;
+        for (var item : loadout) {
+            switch (item) {
+                case Weapon weapon -> {
+                    checkItemCount(count);
+                    itemCost[firstItem + count] = weapon.getEnergyCost();
+                    itemDamage[firstItem + count] = weapon.getDamage();
+                    itemProtection[firstItem + count] = 0;
+                    itemIsWeapon[firstItem + count] = true;
+                }
+                case Armor armor -> {
+                    checkItemCount(count);
+                    itemCost[firstItem + count] = armor.getEnergyCost();
+                    itemDamage[firstItem + count] = 0;
+                    itemProtection[firstItem + count] = armor.getProtection();
+                    itemIsWeapon[firstItem + count] = false;
+                }
+                default -> {
+                    continue;
+                }
+            }
+            items[firstItem + count] = item;
+            count++;
+        }
+        itemCount[k] = count;
+    }
+
+    private void checkItemCount(int count) {
+        if (count == maxItems) {
+            throw new IllegalArgumentException("a hero cannot have more than " + maxItems + " weapons and armors");
+        }
+    }
+
+    private void setEnemy(int slot, EnemyTemplate template, int hp, int block, int attack, int defense) {
+        enemyHp[slot] = hp;
+        enemyBlock[slot] = block;
+        enemyAttack[slot] = attack;
+        enemyDefense[slot] = defense;
+        startEnemyHp[slot] = hp;
+        startEnemyBlock[slot] = block;
+        startEnemyTemplate[slot] = template;
+    }
+
+    private int addHero(int k, Hero hero, int enemies, long seed) {
+        enemyCount[k] = enemies;
+        heroHp[k] = hero.getHp();
+        heroMaxEnergy[k] = hero.getMaxEnergy();
+        startHeroHp[k] = hero.getHp();
+        turns[k] = 0;
+        seeds[k] = seed;
+        randomState[k] = seed;
+        // A combat whose enemies are all dead is won before its first round
+        int firstEnemy = k * maxEnemies;
+        status[k] = allDead(firstEnemy, firstEnemy + enemies) ? WON : RUNNING;
+        decideIntents(k);
+        size++;
+        return k;
+    }
+
+    /**
+     * Removes all the combats.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Returns the number of combats.
+     *
+     * @return the number of combats added since the last clear
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Plays one round of every running combat: the turn of the hero then, if
+     * an enemy is still alive, the turn of the enemies.
+     *
+     * @return the number of combats that played a round
+     */
+    public int step() {
+        int played = 0;
+        for (int k = 0; k < size; k++) {
+            if (status[k] == RUNNING) {
+                playRound(k);
+                played++;
+            }
+        }
+        return played;
+    }
+
+    /**
+     * Plays the combats until they are over, or have played a number of rounds.
+     * The combats are played by blocks small enough for their columns to stay
+     * in the processor cache, and each block only loops over the combats still
+     * running.
+     *
+     * @param maxTurns the largest number of rounds of a combat
+     * @return the number of rounds played by all the combats
+     */
+    public long run(int maxTurns) {
+        if (maxTurns <= 0) {
+            throw new IllegalArgumentException("maxTurns must be positive");
+        }
+        var running = new int[Math.min(size, BLOCK_SIZE)];
+        long rounds = 0;
+        for (int start = 0; start < size; start += BLOCK_SIZE) {
+            int end = Math.min(size, start + BLOCK_SIZE);
+            int count = 0;
+            for (int k = start; k < end; k++) {
+                if (status[k] == RUNNING && turns[k] < maxTurns) {
+                    running[count++] = k;
+                }
+            }
+            while (count != 0) {
+                rounds += count;
+                int kept = 0;
+                for (int i = 0; i < count; i++) {
+                    int k = running[i];
+                    playRound(k);
+                    if (status[k] == RUNNING && turns[k] < maxTurns) {
+                        running[kept++] = k;
+                    }
+                }
+                count = kept;
+            }
+        }
+        return rounds;
+    }
+
+    private void playRound(int k) {
+        turns[k]++;
+        int firstEnemy = k * maxEnemies;
+        int lastEnemy = firstEnemy + enemyCount[k];
+
+        // Turn of the hero
+        int energy = heroMaxEnergy[k];
+        int block = 0;
+        int firstItem = k * maxItems;
+        int lastItem = firstItem + itemCount[k];
+        for (int i = firstItem; i < lastItem; i++) {
+            int cost = itemCost[i];
+            if (energy < cost) {
+                continue;
+            }
+            energy -= cost;
+            if (!itemIsWeapon[i]) {
+                block += itemProtection[i];
+                continue;
+            }
+            int damage = itemDamage[i];
+            int target = firstEnemy;
+            while (target < lastEnemy && enemyHp[target] <= 0) {
+                target++;
+            }
+            if (target == lastEnemy) {
+                status[k] = WON;
+                return;
+            }
+            int enemyBlockLeft = enemyBlock[target] - damage;
+            if (enemyBlockLeft >= 0) {
+                enemyBlock[target] = enemyBlockLeft;
+            } else {
+                enemyBlock[target] = 0;
+                int hp = enemyHp[target] + enemyBlockLeft;
+                enemyHp[target] = Math.max(hp, 0);
+                if (hp <= 0 && allDead(firstEnemy, lastEnemy)) {
+                    status[k] = WON;
+                    return;
+                }
+            }
+        }
+
+        // Turn of the enemies
+        int hp = heroHp[k];
+        for (int j = firstEnemy; j < lastEnemy; j++) {
+            if (enemyHp[j] <= 0 || intents[j] == NO_INTENT) {
+                continue;
+            }
+            if (intents[j] == ATTACK) {
+                enemyBlock[j] = 0;
+                int left = block - enemyAttack[j];
+                if (left >= 0) {
+                    block = left;
+                } else {
+                    block = 0;
+                    hp = Math.max(hp + left, 0);
+                }
+            } else {
+                enemyBlock[j] = enemyDefense[j];
+            }
+        }
+        heroHp[k] = hp;
+        if (hp == 0) {
+            status[k] = LOST;
+            return;
+        }
+        decideIntents(k);
+    }
+
+    private boolean allDead(int firstEnemy, int lastEnemy) {
+        for (int j = firstEnemy; j < lastEnemy; j++) {
+            if (enemyHp[j] > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Draws the intents of the alive enemies of a combat, in order, like
+     * {@link CombatEngine#decideEnemyIntents()} with a {@link CombatRandom}.
+     */
+    private void decideIntents(int k) {
+        int firstEnemy = k * maxEnemies;
+        int lastEnemy = firstEnemy + enemyCount[k];
+        long state = randomState[k];
+        for (int j = firstEnemy; j < lastEnemy; j++) {
+            if (enemyHp[j] > 0) {
+                state += GAMMA;
+                // The top bit, as CombatRandom.nextInt(2)
+                intents[j] = (byte) (mix(state) >>> 63);
+            } else {
+                intents[j] = NO_INTENT;
+            }
+        }
+        randomState[k] = state;
+    }
+
+    /**
+     * The finalizer of SplitMix64.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Checks if a combat is over.
+     *
+     * @param combat the index of the combat
+     * @return true if the hero or all the enemies are dead
+     */
+    public boolean isOver(int combat) {
+        return status[Objects.checkIndex(combat, size)] != RUNNING;
+    }
+
+    /**
+     * Checks if the hero won a combat.
+     *
+     * @param combat the index of the combat
+     * @return true if all the enemies of the combat are dead
+     */
+    public boolean isWon(int combat) {
+        return status[Objects.checkIndex(combat, size)] == WON;
+    }
+
+    /**
+     * Returns the health points of the hero of a combat.
+     *
+     * @param combat the index of the combat
+     * @return the current health points of the hero
+     */
+    public int getHeroHp(int combat) {
+        return heroHp[Objects.checkIndex(combat, size)];
+    }
+
+    /**
+     * Returns the number of rounds played by a combat, the last one included.
+     *
+     * @param combat the index of the combat
+     * @return the number of rounds played
+     */
+    public int getTurns(int combat) {
+        return turns[Objects.checkIndex(combat, size)];
+    }
+
+    /**
+     * Replays every combat with a {@link CombatEngine}, for as many rounds as it
+     * played here, and checks that both end the same way with the same health
+     * points for the hero and the enemies.
+     * The enemies given to {@link #add} are copied, they are not modified.
+     *
+     * @return the number of combats checked
+     * @throws IllegalStateException if a combat ended differently
+     */
+    public int crossCheck() {
+        for (int k = 0; k < size; k++) {
+            crossCheck(k);
+        }
+        return size;
+    }
+
+    private void crossCheck(int k) {
+        var hero = new Hero();
+        hero.setHp(startHeroHp[k]);
+        int firstEnemy = k * maxEnemies;
+        var enemies = new Enemy[enemyCount[k]];
+        for (int j = 0; j < enemies.length; j++) {
+            var enemy = new Enemy(startEnemyTemplate[firstEnemy + j]);
+            enemy.setAttack(enemyAttack[firstEnemy + j]);
+            enemy.setDefense(enemyDefense[firstEnemy + j]);
+            enemy.setHp(startEnemyHp[firstEnemy + j]);
+            enemy.setBlock(startEnemyBlock[firstEnemy + j]);
+            enemies[j] = enemy;
+        }
+        var engine = new CombatEngine(new CombatRandom(seeds[k]));
+        engine.startCombat(List.of(enemies));
+
+        int rounds = 0;
+        boolean won = engine.isCombatOver(hero) && hero.isAlive();
+        while (rounds < turns[k]) {
+            rounds++;
+            // CombatEngine.heroTurn without the mana, that no weapon or armor uses
+            hero.setEnergy(hero.getMaxEnergy());
+            hero.setBlock(0);
+            for (int i = k * maxItems; i < k * maxItems + itemCount[k] && !won; i++) {
+                if (hero.getEnergy() >= itemCost[i]) {
+                    engine.useItem(hero, items[i]);
+                    won = engine.isCombatOver(hero);
+                }
+            }
+            if (won) {
+                break;
+            }
+            engine.endHeroTurn(hero);
+            for (int j = 0; j < enemies.length; j++) {
+                var action = engine.getEnemyIntent(j);
+                if (enemies[j].isAlive() && action != null) {
+                    engine.enemyTurn(hero, enemies[j], action);
+                }
+            }
+            if (!hero.isAlive()) {
+                break;
+            }
+            engine.decideEnemyIntents();
+        }
+
+        byte expected = won ? WON : hero.isAlive() ? RUNNING : LOST;
+        boolean same = expected == status[k] && hero.getHp() == heroHp[k];
+        for (int j = 0; j < enemies.length; j++) {
+            same &= enemies[j].getHp() == enemyHp[firstEnemy + j];
+        }
+        if (!same) {
+            throw new IllegalStateException("combat " + k + " differs from the engine after " + rounds
+                    + " rounds: hero hp " + heroHp[k] + " instead of " + hero.getHp() + ", status " + status[k]
+                    + " instead of " + expected);
+        }
+    }
+
+    /**
+     * The random sequence of one combat, as a generator for the engine: a
+     * SplitMix64 sequence whose {@code nextInt(2)} is the top bit of the next
+     * long, as drawn in {@link BatchCombatSimulator#decideIntents}.
+     */
+    private static final class CombatRandom implements RandomGenerator {
+        private long state;
+
+        private CombatRandom(long seed) {
+            this.state = seed;
+        }
+
+        @Override
+        public long nextLong() {
+            state += GAMMA;
+            return mix(state);
+        }
+
+        @Override
+        public int nextInt(int bound) {
+            if (bound <= 0) {
+                throw new IllegalArgumentException("bound must be positive");
+            }
+            return (int) (((nextLong() >>> 32) * bound) >>> 32);
+        }
+    }
+}
@@ -1,9 +1,16 @@
 package fr.uge.backpackhero.logic;
 
-import java.util.HashMap;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Objects;
-import java.util.Random;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
 
 import fr.uge.backpackhero.model.entity.Enemy;
 import fr.uge.backpackhero.model.entity.Hero;
@@ -19,16 +26,35 @@ import fr.uge.backpackhero.model.item.Weapon;
  */
 public class CombatEngine {
 
-    private final Random random = new Random();
-    private final HashMap<Enemy, EnemyAction> enemyIntents = new HashMap<>();
+    /** Intent of an enemy that has no action this round, dead or not in combat. */
+    private static final byte NO_INTENT = -1;
+    private static final EnemyAction[] ACTIONS = EnemyAction.values();
+
+    private final RandomGenerator random;
+    // Ordinal of the intent of each enemy, at the same index as in currentEnemies
+    private byte[] enemyIntents = new byte[0];
+    private final Map<Enemy, EnemyAction> intentView = new IntentView();
+    private final CombatJournal journal = new CombatJournal();
+    private final CombatHash hash = new CombatHash();
     private List<Enemy> currentEnemies;
     private int selectedEnemyIndex = 0;
+    private int round;
 
     /**
-     * Creates a new CombatEngine instance.
+     * Creates a new CombatEngine instance with an unseeded random generator.
      */
     public CombatEngine() {
-        // Default constructor
+        this(new SplittableRandom());
+    }
+
+    /**
+     * Creates a new CombatEngine instance deciding the enemy intents with the
+     * given random generator.
+     * 
+     * @param random the random generator of the enemy intents
+     */
+    public CombatEngine(RandomGenerator random) {
+        this.random = Objects.requireNonNull(random, "random cannot be null");
     }
 
     /**
@@ -39,6 +65,17 @@ public class CombatEngine {
     public void startCombat(List<Enemy> enemies) {
         this.currentEnemies = Objects.requireNonNull(enemies, "enemies cannot be null");
         this.selectedEnemyIndex = 0;
+        this.round = 0;
+        journal.record(CombatJournal.EventType.COMBAT_START, 0, CombatJournal.HERO, CombatJournal.NOBODY,
+                enemies.size(), 0);
+        // The array is only replaced by a larger one, combats reuse it afterwards
+        if (enemyIntents.length < enemies.size()) {
+            enemyIntents = new byte[enemies.size()];
+        }
+        hash.reset(enemies.size());
+        for (int i = 0; i < enemies.size(); i++) {
+            hash.enemy(i, enemies.get(i));
+        }
         decideEnemyIntents();
     }
 
@@ -48,7 +85,8 @@ public class CombatEngine {
     public void endCombat() {
         this.currentEnemies = null;
         this.selectedEnemyIndex = 0;
-        enemyIntents.clear();
+        Arrays.fill(enemyIntents, NO_INTENT);
+        hash.reset(0);
     }
 
     /**
@@ -60,6 +98,58 @@ public class CombatEngine {
         return currentEnemies;
     }
 
+    /**
+     * Returns the round of the current combat, counted from 1 at its start and
+     * increased each time the enemy intents are decided.
+     * 
+     * @return the current round
+     */
+    public int getRound() {
+        return round;
+    }
+
+    /**
+     * Returns the journal recording the events of the combats of this engine.
+     * 
+     * @return the journal of this engine
+     */
+    public CombatJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Returns the Zobrist hash of the current combat: hp, block, energy and mana
+     * of the hero, hp, block and intent of each enemy, and the items used since
+     * the start of the turn of the hero.
+     * The hash is updated by the methods of this engine as they change the
+     * combat, in constant time, so equal combats reached by different paths
+     * get the same hash without walking the hero and the enemies. Changes made
+     * to the hero or the enemies outside of this engine are only seen by the
+     * next method of the engine that touches them.
+     * 
+     * @return the hash of the current combat
+     */
+    public long getStateHash() {
+        return hash.value();
+    }
+
+    /**
+     * Computes the hash of the current combat from the hero and the enemies,
+     * without the incremental updates. It equals {@link #getStateHash()} when
+     * the combat was only changed through this engine.
+     * 
+     * @param hero the hero of the combat
+     * @return the hash of the current combat
+     * @throws IllegalStateException if the engine is not in a combat
+     */
+    public long computeStateHash(Hero hero) {
+        Objects.requireNonNull(hero, "hero cannot be null");
+        if (currentEnemies == null) {
+            throw new IllegalStateException("the engine is not in a combat");
+        }
+        return hash.compute(hero, currentEnemies, enemyIntents);
+    }
+
     /**
      * Checks if the combat engine is currently in an active combat.
      * 
@@ -79,9 +169,12 @@ public class CombatEngine {
     public void heroTurn(Hero hero, Backpack backpack) {
         Objects.requireNonNull(hero, "hero cannot be null");
         Objects.requireNonNull(backpack, "backpack cannot be null");
-        hero.setEnergy(3);
+        hero.setEnergy(hero.getMaxEnergy());
         hero.setBlock(0);
         hero.setMana(backpack.getMana());
+        hash.clearUsedItems();
+        hash.useBackpack(backpack);
+        hash.hero(hero);
     }
 
     /**
@@ -92,11 +185,15 @@ public class CombatEngine {
      */
     public EnemyAction decideEnemyAction(Enemy enemy) {
         Objects.requireNonNull(enemy, "enemy cannot be null");
-        if (random.nextInt(2) == 0) {
-            return EnemyAction.ATTACK;
-        } else {
-            return EnemyAction.DEFEND;
-        }
+        return rollEnemyAction(random);
+    }
+
+    /**
+     * Draws an enemy action, attack or defend with the same probability; shared
+     * with the simulations so that they follow the same rule.
+     */
+    static EnemyAction rollEnemyAction(RandomGenerator random) {
+        return random.nextInt(2) == 0 ? EnemyAction.ATTACK : EnemyAction.DEFEND;
     }
 
     /**
@@ -104,33 +201,83 @@ public class CombatEngine {
      * This should be called at the start of each round before the hero's turn.
      */
     public void decideEnemyIntents() {
-        enemyIntents.clear();
+        Arrays.fill(enemyIntents, NO_INTENT);
         if (currentEnemies == null)
             return;
-        for (Enemy enemy : currentEnemies) {
+        round++;
+        for (int i = 0; i < currentEnemies.size(); i++) {
+            var enemy = currentEnemies.get(i);
             if (enemy.isAlive()) {
-                enemyIntents.put(enemy, decideEnemyAction(enemy));
+                enemyIntents[i] = (byte) decideEnemyAction(enemy).ordinal();
+                journal.record(CombatJournal.EventType.INTENT, round, i, CombatJournal.NOBODY, enemyIntents[i], 0);
             }
+            hash.intent(i, enemyIntents[i]);
+        }
+    }
+
+    /**
+     * Returns the intent of the enemy at the given index of the current enemies.
+     * 
+     * @param index the index of the enemy in {@link #getCurrentEnemies()}
+     * @return the enemy's intent, or null if it has none this round
+     * @throws IndexOutOfBoundsException if there is no enemy at this index
+     */
+    public EnemyAction getEnemyIntent(int index) {
+        if (currentEnemies == null) {
+            throw new IndexOutOfBoundsException("no enemy at index " + index + " out of combat");
         }
+        Objects.checkIndex(index, currentEnemies.size());
+        int intent = enemyIntents[index];
+        return intent == NO_INTENT ? null : ACTIONS[intent];
     }
 
     /**
-     * Returns the map of enemy intents for the current round.
+     * Returns a read-only view of the enemy intents of the current round, from
+     * each enemy with an intent to its action.
+     * The view follows the engine, it does not need to be fetched again after
+     * each round; the index-based {@link #getEnemyIntent(int)} is cheaper.
      * 
      * @return the map of enemy intents
      */
-    public HashMap<Enemy, EnemyAction> getEnemyIntents() {
-        return enemyIntents;
+    public Map<Enemy, EnemyAction> getEnemyIntents() {
+        return intentView;
     }
 
     /**
      * Gets the intent of a specific enemy.
+     * The enemy is searched in the current enemies, prefer
+     * {@link #getEnemyIntent(int)} when its index is known.
      * 
      * @param enemy the enemy to get the intent for
      * @return the enemy's intent, or null if not set
      */
     public EnemyAction getEnemyIntent(Enemy enemy) {
-        return enemyIntents.get(enemy);
+        int index = indexOf(enemy);
+        return index < 0 ? null : getEnemyIntent(index);
+    }
+
+    /**
+     * Returns the index of an enemy in the current enemies, comparing
+     * references, or -1 if it does not fight.
+     */
+    private int indexOf(Object enemy) {
+        if (currentEnemies == null) {
+            return -1;
+        }
+        for (int i = 0; i < currentEnemies.size(); i++) {
+            if (currentEnemies.get(i) == enemy) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of an enemy in the events of the journal.
+     */
+    private int journalIndex(Enemy enemy) {
+        int index = indexOf(enemy);
+        return index < 0 ? CombatJournal.NOBODY : index;
     }
 
     /**
@@ -173,12 +320,23 @@ public class CombatEngine {
 
         int damage = weapon.getDamage();
         int enemyBlock = enemy.getBlock();
+        boolean wasAlive = enemy.isAlive();
         if (enemyBlock >= damage) {
             enemy.setBlock(enemyBlock - damage);
         } else {
             enemy.setBlock(0);
             enemy.setHp(enemy.getHp() - (damage - enemyBlock));
         }
+        int index = journalIndex(enemy);
+        journal.record(CombatJournal.EventType.HERO_ATTACK, round, CombatJournal.HERO, index, damage, enemy.getHp());
+        if (wasAlive && !enemy.isAlive()) {
+            journal.record(CombatJournal.EventType.ENEMY_DEATH, round, index, CombatJournal.HERO, 0, 0);
+        }
+        hash.useItem(weapon);
+        hash.hero(hero);
+        if (index >= 0) {
+            hash.enemy(index, enemy);
+        }
         return true;
     }
 
@@ -199,6 +357,10 @@ public class CombatEngine {
 
         hero.setEnergy(hero.getEnergy() - cost);
         hero.setBlock(hero.getBlock() + armor.getProtection());
+        journal.record(CombatJournal.EventType.HERO_BLOCK, round, CombatJournal.HERO, CombatJournal.HERO,
+                armor.getProtection(), hero.getBlock());
+        hash.useItem(armor);
+        hash.hero(hero);
         return true;
     }
 
@@ -213,6 +375,7 @@ public class CombatEngine {
         Objects.requireNonNull(enemy, "enemy cannot be null");
         int damage = enemy.getAttack();
         int heroBlock = hero.getBlock();
+        boolean wasAlive = hero.isAlive();
 
         if (heroBlock >= damage) {
             hero.setBlock(heroBlock - damage);
@@ -220,6 +383,15 @@ public class CombatEngine {
             hero.setBlock(0);
             hero.setHp(hero.getHp() - (damage - heroBlock));
         }
+        int index = journalIndex(enemy);
+        journal.record(CombatJournal.EventType.ENEMY_ATTACK, round, index, CombatJournal.HERO, damage, hero.getHp());
+        if (wasAlive && !hero.isAlive()) {
+            journal.record(CombatJournal.EventType.HERO_DEATH, round, CombatJournal.HERO, index, 0, 0);
+        }
+        hash.hero(hero);
+        if (index >= 0) {
+            hash.enemy(index, enemy);
+        }
     }
 
     /**
@@ -230,6 +402,12 @@ public class CombatEngine {
     public void enemyDefend(Enemy enemy) {
         Objects.requireNonNull(enemy, "enemy cannot be null");
         enemy.setBlock(enemy.getBlock() + enemy.getDefense());
+        int index = journalIndex(enemy);
+        journal.record(CombatJournal.EventType.ENEMY_BLOCK, round, index, CombatJournal.NOBODY, enemy.getDefense(),
+                enemy.getBlock());
+        if (index >= 0) {
+            hash.enemy(index, enemy);
+        }
     }
 
     /**
@@ -360,5 +538,77 @@ public class CombatEngine {
     public void endHeroTurn(Hero hero) {
         Objects.requireNonNull(hero, "hero cannot be null");
         hero.setEnergy(0);
+        hash.hero(hero);
+    }
+
+    /**
+     * Map view of the intent array, listing the enemies that have an intent in
+     * their order of the combat.
+     */
+    private final class IntentView extends AbstractMap<Enemy, EnemyAction> {
+        private final Set<Map.Entry<Enemy, EnemyAction>> entries = new AbstractSet<>() {
+            @Override
+            public Iterator<Map.Entry<Enemy, EnemyAction>> iterator() {
+                return new Iterator<>() {
+                    private int next = nextIntent(0);
+
+                    @Override
+                    public boolean hasNext() {
+                        return next >= 0;
+                    }
+
+                    @Override
+                    public Map.Entry<Enemy, EnemyAction> next() {
+                        if (next < 0) {
+                            throw new NoSuchElementException();
+                        }
+                        var entry = Map.entry(currentEnemies.get(next), ACTIONS[enemyIntents[next]]);
+                        next = nextIntent(next + 1);
+                        return entry;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                int size = 0;
+                for (int i = nextIntent(0); i >= 0; i = nextIntent(i + 1)) {
+                    size++;
+                }
+                return size;
+            }
+        };
+
+        /**
+         * Returns the first index from the given one of an enemy with an intent, or
+         * -1 if there is none.
+         */
+        private int nextIntent(int from) {
+            if (currentEnemies == null) {
+                return -1;
+            }
+            for (int i = from; i < currentEnemies.size(); i++) {
+                if (enemyIntents[i] != NO_INTENT) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public Set<Map.Entry<Enemy, EnemyAction>> entrySet() {
+            return entries;
+        }
+
+        @Override
+        public EnemyAction get(Object key) {
+            int index = indexOf(key);
+            return index < 0 ? null : getEnemyIntent(index);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
     }
 }
@@ -0,0 +1,198 @@
+package fr.uge.backpackhero.logic;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Estimates the chance of the hero to win the current combat, and the health
+ * points left at the end, by playing the combat forward many times.
+ * <p>
+ * Each rollout starts from a {@link CombatSimulation} of the combat; the hero
+ * follows a {@link HeroPolicy} and the enemies draw their next intents at
+ * random, like {@link CombatEngine#decideEnemyAction}. Rollouts are split in
+ * chunks that run as tasks of a {@link ForkJoinPool}; each chunk reuses one
+ * simulation and has its own random generator, split from the seed of the
+ * estimate, so an estimate that is not cut by the time budget only depends on
+ * its seed. Rollouts stop when the time budget is spent and the estimate is
+ * made from the rollouts played so far.
+ *
+ */
+public final class CombatEstimator {
+
+    /** Default number of rollouts of an estimate. */
+    private static final int DEFAULT_ROLLOUTS = 4096;
+    /** Default time budget, short enough to show the estimate during a turn. */
+    private static final Duration DEFAULT_TIME_BUDGET = Duration.ofMillis(40);
+    /** Number of rollouts played by one task. */
+    private static final int CHUNK_SIZE = 256;
+    /** Number of rollouts between two checks of the clock. */
+    private static final int CLOCK_CHECK_INTERVAL = 16;
+    /** Turns after which a rollout is stopped and counted as not won. */
+    private static final int MAX_TURNS = 100;
+
+    private final HeroPolicy policy;
+    private final int rollouts;
+    private final long timeBudgetNanos;
+    private final ForkJoinPool pool;
+
+    /**
+     * The outcome of an estimate.
+     *
+     * @param rollouts     the number of rollouts played
+     * @param winRate      the fraction of the rollouts won by the hero
+     * @param expectedHp   the average health points of the hero at the end of a
+     *                     rollout, 0 when the hero died
+     * @param averageTurns the average number of turns of a rollout
+     */
+    public record Estimate(int rollouts, double winRate, double expectedHp, double averageTurns) {
+    }
+
+    /**
+     * Creates a new CombatEstimator.
+     *
+     * @param policy     the policy of the hero during the rollouts
+     * @param rollouts   the number of rollouts of an estimate
+     * @param timeBudget the maximum time spent in one estimate
+     * @param pool       the pool running the rollouts
+     */
+    public CombatEstimator(HeroPolicy policy, int rollouts, Duration timeBudget, ForkJoinPool pool) {
+        this.policy = Objects.requireNonNull(policy, "policy cannot be null");
+        if (rollouts <= 0) {
+            throw new IllegalArgumentException("rollouts must be positive");
+        }
+        Objects.requireNonNull(timeBudget, "timeBudget cannot be null");
+        if (timeBudget.isNegative() || timeBudget.isZero()) {
+            throw new IllegalArgumentException("timeBudget must be positive");
+        }
+        this.rollouts = rollouts;
+        this.timeBudgetNanos = timeBudget.toNanos();
+        this.pool = Objects.requireNonNull(pool, "pool cannot be null");
+    }
+
+    /**
+     * Creates a new CombatEstimator following the greedy policy, on the common
+     * pool.
+     */
+    public CombatEstimator() {
+        this(HeroPolicy.greedy(), DEFAULT_ROLLOUTS, DEFAULT_TIME_BUDGET, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Estimates the outcome of the current combat of a game. The game is not
+     * modified.
+     *
+     * @param state the game, in a combat
+     * @return the estimate
+     * @throws IllegalStateException if the game is not in a combat
+     */
+    public Estimate estimate(GameState state) {
+        Objects.requireNonNull(state, "state cannot be null");
+        var combat = CombatSimulation.of(state.getCombatEngine(), state.getHero(), state.getBackpack());
+        return estimate(combat, ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * Estimates the outcome of a simulated combat, from the current turn of the
+     * hero. The simulation is not modified.
+     *
+     * @param start the combat to play forward
+     * @param seed  the seed of the random generators of the rollouts
+     * @return the estimate
+     */
+    public Estimate estimate(CombatSimulation start, long seed) {
+        Objects.requireNonNull(start, "start cannot be null");
+        var deadline = System.nanoTime() + timeBudgetNanos;
+        var tally = pool.invoke(new RolloutTask(start, new SplittableRandom(seed), rollouts, deadline));
+        int played = tally.played;
+        if (played == 0) {
+            return new Estimate(0, 0, 0, 0);
+        }
+        return new Estimate(played, (double) tally.wins / played, (double) tally.hpSum / played,
+                (double) tally.turnSum / played);
+    }
+
+    /**
+     * Plays a combat until it is over, or for too many turns.
+     */
+    private void playOut(CombatSimulation combat, SplittableRandom random) {
+        while (!combat.isOver() && combat.getTurn() < MAX_TURNS) {
+            int item = policy.chooseItem(combat, random);
+            if (item < 0 || item >= combat.getItemCount() || !combat.useItem(item)) {
+                combat.endTurn(random);
+            } else if (!combat.isOver() && combat.getHeroEnergy() == 0) {
+                // Like a game session, the turn ends once the energy is spent
+                combat.endTurn(random);
+            }
+        }
+    }
+
+    /**
+     * Sums of the outcomes of some rollouts.
+     */
+    private static final class Tally {
+        private int played;
+        private int wins;
+        private long hpSum;
+        private long turnSum;
+
+        private Tally add(Tally other) {
+            played += other.played;
+            wins += other.wins;
+            hpSum += other.hpSum;
+            turnSum += other.turnSum;
+            return this;
+        }
+    }
+
+    /**
+     * Plays a number of rollouts, splitting them in two tasks while there are
+     * more than a chunk.
+     */
+    private final class RolloutTask extends RecursiveTask<Tally> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient CombatSimulation start;
+        private final transient SplittableRandom random;
+        private final int count;
+        private final long deadline;
+
+        private RolloutTask(CombatSimulation start, SplittableRandom random, int count, long deadline) {
+            this.start = start;
+            this.random = random;
+            this.count = count;
+            this.deadline = deadline;
+        }
+
+        @Override
+        protected Tally compute() {
+            if (count > CHUNK_SIZE) {
+                int half = count / 2;
+                // Split before forking so that each half always gets the same generator
+                var left = new RolloutTask(start, random.split(), half, deadline);
+                var right = new RolloutTask(start, random, count - half, deadline);
+                left.fork();
+                return right.compute().add(left.join());
+            }
+            var tally = new Tally();
+            var combat = start.copy();
+            for (int i = 0; i < count; i++) {
+                if (i % CLOCK_CHECK_INTERVAL == 0 && System.nanoTime() - deadline > 0) {
+                    break;
+                }
+                combat.copyFrom(start);
+                playOut(combat, random);
+                tally.played++;
+                if (combat.isWon()) {
+                    tally.wins++;
+                }
+                tally.hpSum += combat.getHeroHp();
+                tally.turnSum += combat.getTurn();
+            }
+            return tally;
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package fr.uge.backpackhero.logic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import fr.uge.backpackhero.model.entity.Enemy;
+import fr.uge.backpackhero.model.entity.Hero;
+import fr.uge.backpackhero.model.item.Backpack;
+import fr.uge.backpackhero.model.item.Item;
+
+/**
+ * The Zobrist hash of a combat of a {@link CombatEngine}, kept up to date as
+ * the combat changes.
+ * The hash is the xor of one random key per feature of the combat and its
+ * value: hp, block, energy and mana of the hero, hp, block and intent of each
+ * enemy, and one key per item used this turn, known by the cell of its anchor
+ * in the backpack so that the same combat always gets the same hash. Keys of
+ * the usual values are
+ * read from a table filled at class loading; as blocks and mana have no bound,
+ * the other keys are computed by the same mixing function that filled the
+ * table. The values last hashed are kept, so changing a feature only xors out
+ * the key of its old value and xors in the key of the new one.
+ *
+ */
+final class CombatHash {
+
+    private static final int HERO_HP = 0;
+    private static final int HERO_BLOCK = 1;
+    private static final int HERO_ENERGY = 2;
+    private static final int HERO_MANA = 3;
+    /** Feature of the hp of the first enemy, followed by its block and intent. */
+    private static final int FIRST_ENEMY = 4;
+    private static final int ENEMY_FEATURES = 3;
+    private static final int USED_ITEM = -1;
+    private static final byte NO_INTENT = -1;
+    /** Features with a table of keys: the hero and the first eight enemies. */
+    private static final int TABLE_FEATURES = FIRST_ENEMY + 8 * ENEMY_FEATURES;
+    /** Values with a key in the table, from -1 for no intent. */
+    private static final int TABLE_VALUES = 64;
+    private static final long[] KEYS = new long[TABLE_FEATURES * TABLE_VALUES];
+
+    static {
+        for (int feature = 0; feature < TABLE_FEATURES; feature++) {
+            for (int value = -1; value < TABLE_VALUES - 1; value++) {
+                KEYS[feature * TABLE_VALUES + value + 1] = mix(feature, value);
+            }
+        }
+    }
+
+    private long hash;
+    private int heroHp;
+    private int heroBlock;
+    private int heroEnergy;
+    private int heroMana;
+    private int[] enemyHp = new int[0];
+    private int[] enemyBlock = new int[0];
+    private byte[] intents = new byte[0];
+    private Backpack backpack; // Backpack whose anchors index the used items, null if none
+    private final ArrayList<Item> outsideItems = new ArrayList<>(); // Used items not in the backpack
+    private int[] usedItems = new int[8];
+    private int usedCount;
+
+    /**
+     * Returns the hash of the combat.
+     */
+    long value() {
+        return hash;
+    }
+
+    /**
+     * Starts the hash of a new combat, with every feature at 0 and no intent.
+     */
+    void reset(int enemyCount) {
+        if (enemyHp.length < enemyCount) {
+            enemyHp = new int[enemyCount];
+            enemyBlock = new int[enemyCount];
+            intents = new byte[enemyCount];
+        }
+        heroHp = 0;
+        heroBlock = 0;
+        heroEnergy = 0;
+        heroMana = 0;
+        Arrays.fill(enemyHp, 0);
+        Arrays.fill(enemyBlock, 0);
+        Arrays.fill(intents, NO_INTENT);
+        backpack = null;
+        outsideItems.clear();
+        usedCount = 0;
+        hash = 0;
+        for (int feature = HERO_HP; feature <= HERO_MANA; feature++) {
+            hash ^= key(feature, 0);
+        }
+        for (int i = 0; i < enemyCount; i++) {
+            hash ^= key(enemyFeature(i, 0), 0) ^ key(enemyFeature(i, 1), 0) ^ key(enemyFeature(i, 2), NO_INTENT);
+        }
+    }
+
+    /**
+     * Updates the hash with the current hp, block, energy and mana of the hero.
+     */
+    void hero(Hero hero) {
+        int hp = hero.getHp();
+        if (hp != heroHp) {
+            hash ^= key(HERO_HP, heroHp) ^ key(HERO_HP, hp);
+            heroHp = hp;
+        }
+        int block = hero.getBlock();
+        if (block != heroBlock) {
+            hash ^= key(HERO_BLOCK, heroBlock) ^ key(HERO_BLOCK, block);
+            heroBlock = block;
+        }
+        int energy = hero.getEnergy();
+        if (energy != heroEnergy) {
+            hash ^= key(HERO_ENERGY, heroEnergy) ^ key(HERO_ENERGY, energy);
+            heroEnergy = energy;
+        }
+        int mana = hero.getMana();
+        if (mana != heroMana) {
+            hash ^= key(HERO_MANA, heroMana) ^ key(HERO_MANA, mana);
+            heroMana = mana;
+        }
+    }
+
+    /**
+     * Updates the hash with the current hp and block of an enemy.
+     */
+    void enemy(int index, Enemy enemy) {
+        int hp = enemy.getHp();
+        if (hp != enemyHp[index]) {
+            int feature = enemyFeature(index, 0);
+            hash ^= key(feature, enemyHp[index]) ^ key(feature, hp);
+            enemyHp[index] = hp;
+        }
+        int block = enemy.getBlock();
+        if (block != enemyBlock[index]) {
+            int feature = enemyFeature(index, 1);
+            hash ^= key(feature, enemyBlock[index]) ^ key(feature, block);
+            enemyBlock[index] = block;
+        }
+    }
+
+    /**
+     * Updates the hash with the intent of an enemy, as an ordinal or -1.
+     */
+    void intent(int index, byte intent) {
+        if (intent != intents[index]) {
+            int feature = enemyFeature(index, 2);
+            hash ^= key(feature, intents[index]) ^ key(feature, intent);
+            intents[index] = intent;
+        }
+    }
+
+    /**
+     * Sets the backpack the used items are looked up in. An item is known by
+     * the cell of its anchor, which tells apart two copies of a sword and does
+     * not depend on the order the items are used in.
+     */
+    void useBackpack(Backpack backpack) {
+        this.backpack = backpack;
+    }
+
+    /**
+     * Adds an item to the items used this turn, if it is not already there.
+     */
+    void useItem(Item item) {
+        int index = itemIndex(item);
+        for (int i = 0; i < usedCount; i++) {
+            if (usedItems[i] == index) {
+                return;
+            }
+        }
+        if (usedCount == usedItems.length) {
+            usedItems = Arrays.copyOf(usedItems, usedCount * 2);
+        }
+        usedItems[usedCount++] = index;
+        hash ^= key(USED_ITEM, index);
+    }
+
+    /**
+     * Returns the cell of the anchor of an item in the backpack. Items that are
+     * not in the backpack get a negative index the first time they are used,
+     * until the next combat.
+     */
+    private int itemIndex(Item item) {
+        var anchor = backpack == null ? null : backpack.findAnchorFor(item);
+        if (anchor != null) {
+            return anchor.y() * backpack.getWidth() + anchor.x();
+        }
+        for (int i = 0; i < outsideItems.size(); i++) {
+            if (outsideItems.get(i) == item) {
+                return -1 - i;
+            }
+        }
+        outsideItems.add(item);
+        return -outsideItems.size();
+    }
+
+    /**
+     * Forgets the items used this turn.
+     */
+    void clearUsedItems() {
+        for (int i = 0; i < usedCount; i++) {
+            hash ^= key(USED_ITEM, usedItems[i]);
+        }
+        usedCount = 0;
+    }
+
+    /**
+     * Computes the hash of a combat from scratch, with the items used this turn
+     * known by this hash.
+     */
+    long compute(Hero hero, List<Enemy> enemies, byte[] enemyIntents) {
+        long value = key(HERO_HP, hero.getHp()) ^ key(HERO_BLOCK, hero.getBlock())
+                ^ key(HERO_ENERGY, hero.getEnergy()) ^ key(HERO_MANA, hero.getMana());
+        for (int i = 0; i < enemies.size(); i++) {
+            var enemy = enemies.get(i);
+            value ^= key(enemyFeature(i, 0), enemy.getHp()) ^ key(enemyFeature(i, 1), enemy.getBlock())
+                    ^ key(enemyFeature(i, 2), enemyIntents[i]);
+        }
+        for (int i = 0; i < usedCount; i++) {
+            value ^= key(USED_ITEM, usedItems[i]);
+        }
+        return value;
+    }
+
+    private static int enemyFeature(int index, int feature) {
+        return FIRST_ENEMY + index * ENEMY_FEATURES + feature;
+    }
+
+    private static long key(int feature, int value) {
+        int column = value + 1;
+        if (feature >= 0 && feature < TABLE_FEATURES && column >= 0 && column < TABLE_VALUES) {
+            return KEYS[feature * TABLE_VALUES + column];
+        }
+        return mix(feature, value);
+    }
+
+    /**
+     * The key of a feature with a value: the SplitMix64 finalizer of both, a
+     * bijection, so that two different pairs never share a key.
+     */
+    private static long mix(int feature, int value) {
+        long z = ((long) feature << 32 | (value & 0xFFFFFFFFL)) + 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,226 @@
+package fr.uge.backpackhero.logic;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * A journal of what happened during the combats of a {@link CombatEngine}:
+ * attacks, blocks, intents, deaths and rewards.
+ * Events are written as fixed-size records of four ints in a ring buffer
+ * allocated once, so recording an event never allocates; once the buffer is
+ * full, each new event overwrites the oldest one. The record of an event holds
+ * its type, actor and target packed in one int, then its round, amount and
+ * result, whose meaning depends on the type (see {@link EventType}).
+ * Readers see the events kept in the buffer, from the oldest to the newest,
+ * as {@link Event} objects created when they are read.
+ *
+ */
+public final class CombatJournal {
+
+    /** Actor or target of an event standing for the hero. */
+    public static final int HERO = -1;
+    /** Actor or target of an event that has none. */
+    public static final int NOBODY = -2;
+
+    /** Default number of events kept. */
+    private static final int DEFAULT_CAPACITY = 1024;
+    /** Number of ints of a record. */
+    private static final int RECORD_SIZE = 4;
+    private static final EventType[] TYPES = EventType.values();
+
+    private final int[] records;
+    private final int mask;
+    private long written;
+
+    /**
+     * The kinds of events recorded. Actors and targets are indices of
+     * {@link CombatEngine#getCurrentEnemies()}, {@link #HERO} or
+     * {@link #NOBODY}.
+     */
+    public enum EventType {
+        /** A combat starts; the amount is the number of enemies. */
+        COMBAT_START,
+        /** An enemy decides its intent; the amount is the ordinal of its {@link EnemyAction}. */
+        INTENT,
+        /** The hero hits the target; the amount is the damage, the result the hp left to the target. */
+        HERO_ATTACK,
+        /** The hero uses an armor; the amount is the protection, the result the block of the hero. */
+        HERO_BLOCK,
+        /** An enemy hits the hero; the amount is the damage, the result the hp left to the hero. */
+        ENEMY_ATTACK,
+        /** An enemy defends; the amount is its defense, the result its block. */
+        ENEMY_BLOCK,
+        /** An enemy dies, killed by the hero. */
+        ENEMY_DEATH,
+        /** The hero dies, killed by the actor. */
+        HERO_DEATH,
+        /** The hero wins gold; the amount is the reward, the result the gold of the hero. */
+        GOLD_REWARD,
+        /** The hero wins experience; the amount is the reward, the result the level of the hero. */
+        XP_REWARD
+    }
+
+    /**
+     * An event read from the journal.
+     *
+     * @param sequence the number of events recorded before this one
+     * @param type     the type of the event
+     * @param round    the round of the combat, from 1
+     * @param actor    the enemy index of the actor, {@link #HERO} or
+     *                 {@link #NOBODY}
+     * @param target   the enemy index of the target, {@link #HERO} or
+     *                 {@link #NOBODY}
+     * @param amount   the amount of the event
+     * @param result   the result of the event
+     */
+    public record Event(long sequence, EventType type, int round, int actor, int target, int amount, int result) {
+    }
+
+    /**
+     * Creates a journal keeping at least the given number of events.
+     *
+     * @param capacity the number of events kept, rounded up to a power of two
+     */
+    public CombatJournal(int capacity) {
+        if (capacity <= 0 || capacity > (1 << 24)) {
+            throw new IllegalArgumentException("capacity must be between 1 and 2^24");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.records = new int[size * RECORD_SIZE];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Creates a journal keeping the last 1024 events.
+     */
+    public CombatJournal() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Records an event, overwriting the oldest one if the journal is full.
+     *
+     * @param type   the type of the event
+     * @param round  the round of the combat
+     * @param actor  the actor of the event, an enemy index between 0 and 127,
+     *               {@link #HERO} or {@link #NOBODY}
+     * @param target the target of the event, like the actor
+     * @param amount the amount of the event
+     * @param result the result of the event
+     */
+    public void record(EventType type, int round, int actor, int target, int amount, int result) {
+        int offset = (int) (written & mask) * RECORD_SIZE;
+        records[offset] = type.ordinal() << 16 | (actor & 0xFF) << 8 | (target & 0xFF);
+        records[offset + 1] = round;
+        records[offset + 2] = amount;
+        records[offset + 3] = result;
+        written++;
+    }
+
+    /**
+     * Returns the number of events the journal can keep.
+     *
+     * @return the capacity of the journal
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Returns the number of events kept in the journal.
+     *
+     * @return the number of events that can be read
+     */
+    public int size() {
+        return (int) Math.min(written, mask + 1);
+    }
+
+    /**
+     * Returns the number of events recorded since the journal was created or
+     * cleared, including the ones overwritten.
+     *
+     * @return the number of events recorded
+     */
+    public long written() {
+        return written;
+    }
+
+    /**
+     * Forgets all the events.
+     */
+    public void clear() {
+        written = 0;
+    }
+
+    /**
+     * Returns an event of the journal.
+     *
+     * @param index the index of the event, 0 for the oldest event kept
+     * @return the event
+     * @throws IndexOutOfBoundsException if index is not less than {@link #size()}
+     */
+    public Event get(int index) {
+        Objects.checkIndex(index, size());
+        long sequence = written - size() + index;
+        int offset = (int) (sequence & mask) * RECORD_SIZE;
+        int header = records[offset];
+        return new Event(sequence, TYPES[header >>> 16], records[offset + 1], (byte) (header >>> 8), (byte) header,
+                records[offset + 2], records[offset + 3]);
+    }
+
+    /**
+     * Returns the type of an event without reading the rest of it.
+     */
+    private EventType typeAt(int index) {
+        long sequence = written - size() + index;
+        return TYPES[records[(int) (sequence & mask) * RECORD_SIZE] >>> 16];
+    }
+
+    /**
+     * Returns the events of the journal, from the oldest to the newest.
+     * The journal must not be written while the stream is consumed.
+     *
+     * @return a stream of the events
+     */
+    public Stream<Event> stream() {
+        return IntStream.range(0, size()).mapToObj(this::get);
+    }
+
+    /**
+     * Returns the events of a type, from the oldest to the newest; the other
+     * events are skipped without being read.
+     * The journal must not be written while the stream is consumed.
+     *
+     * @param type the type of the events
+     * @return a stream of the events of the type
+     */
+    public Stream<Event> stream(EventType type) {
+        Objects.requireNonNull(type, "type cannot be null");
+        return IntStream.range(0, size()).filter(i -> typeAt(i) == type).mapToObj(this::get);
+    }
+
+    /**
+     * Writes the events of the journal as CSV, one line per event after a header
+     * line, from the oldest to the newest.
+     *
+     * @param out where to write the events
+     * @throws IOException if an I/O error occurs writing the events
+     */
+    public void exportCsv(Appendable out) throws IOException {
+        Objects.requireNonNull(out, "out cannot be null");
+        out.append("sequence,type,round,actor,target,amount,result\n");
+        for (int i = 0; i < size(); i++) {
+            var event = get(i);
+            out.append(Long.toString(event.sequence())).append(',').append(event.type().name()).append(',')
+                    .append(Integer.toString(event.round())).append(',').append(Integer.toString(event.actor()))
+                    .append(',').append(Integer.toString(event.target())).append(',')
+                    .append(Integer.toString(event.amount())).append(',').append(Integer.toString(event.result()))
+                    .append('\n');
+        }
+    }
+}
@@ -0,0 +1,615 @@
+package fr.uge.backpackhero.logic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.random.RandomGenerator;
+
+import fr.uge.backpackhero.model.entity.Hero;
+import fr.uge.backpackhero.model.item.Armor;
+import fr.uge.backpackhero.model.item.Backpack;
+import fr.uge.backpackhero.model.item.Item;
+import fr.uge.backpackhero.model.item.Weapon;
+
+/**
+ * A cheap, copyable copy of a combat, used to play it forward without touching
+ * the real {@link Hero}, enemies and {@link CombatEngine}.
+ * The hero and the enemies are stored as ints (enemies in arrays indexed like
+ * {@link CombatEngine#getCurrentEnemies()}), and the usable items of the
+ * backpack as their energy cost, damage and protection. Items are shared by
+ * all the copies of a simulation, so copying one only copies a few small
+ * arrays.
+ * The rules are those of {@link CombatEngine}: an item can be used as many
+ * times as the energy allows, weapons hit the target enemy (or the first alive
+ * one) through its block, armors add to the block of the hero, and at the end
+ * of the turn each enemy drops its block then attacks or defends.
+ *
+ */
+public final class CombatSimulation {
+
+    private static final byte NO_INTENT = -1;
+
+    // Items, shared between copies
+    private final Item[] items;
+    private final int[] itemCost;
+    private final int[] itemManaCost;
+    private final int[] itemDamage;
+    private final int[] itemProtection;
+    private final boolean[] itemIsWeapon;
+    // Enemy stats that never change during a combat, shared between copies
+    private final int[] enemyMaxHp;
+    private final int[] enemyAttack;
+    private final int[] enemyDefense;
+
+    private final int heroMaxHp;
+    private final int heroMaxEnergy;
+    private int heroHp;
+    private int heroBlock;
+    private int heroEnergy;
+    private int heroMana;
+    private final int[] enemyHp;
+    private final int[] enemyBlock;
+    private final byte[] intents; // ordinal of the EnemyAction, NO_INTENT if none
+    private int target;
+    private int turn;
+
+    private CombatSimulation(Item[] items, int[] enemyMaxHp, int[] enemyAttack, int[] enemyDefense, int heroMaxHp,
+            int heroMaxEnergy) {
+        this.items = items;
+        this.itemCost = new int[items.length];
+        this.itemManaCost = new int[items.length];
+        this.itemDamage = new int[items.length];
+        this.itemProtection = new int[items.length];
+        this.itemIsWeapon = new boolean[items.length];
+        for (int i = 0; i < items.length; i++) {
+            switch (items[i]) {
+                case Weapon weapon -> {
+                    itemCost[i] = weapon.getEnergyCost();
+                    itemManaCost[i] = weapon.getManaCost();
+                    itemDamage[i] = weapon.getDamage();
+                    itemIsWeapon[i] = true;
+                }
+                case Armor armor -> {
+                    itemCost[i] = armor.getEnergyCost();
+                    itemManaCost[i] = armor.getManaCost();
+                    itemProtection[i] = armor.getProtection();
+                }
+                default -> throw new AssertionError("unusable item " + items[i]);
+            }
+        }
+        this.enemyMaxHp = enemyMaxHp;
+        this.enemyAttack = enemyAttack;
+        this.enemyDefense = enemyDefense;
+        this.heroMaxHp = heroMaxHp;
+        this.heroMaxEnergy = heroMaxEnergy;
+        this.enemyHp = new int[enemyMaxHp.length];
+        this.enemyBlock = new int[enemyMaxHp.length];
+        this.intents = new byte[enemyMaxHp.length];
+    }
+
+    private CombatSimulation(CombatSimulation other) {
+        this.items = other.items;
+        this.itemCost = other.itemCost;
+        this.itemManaCost = other.itemManaCost;
+        this.itemDamage = other.itemDamage;
+        this.itemProtection = other.itemProtection;
+        this.itemIsWeapon = other.itemIsWeapon;
+        this.enemyMaxHp = other.enemyMaxHp;
+        this.enemyAttack = other.enemyAttack;
+        this.enemyDefense = other.enemyDefense;
+        this.heroMaxHp = other.heroMaxHp;
+        this.heroMaxEnergy = other.heroMaxEnergy;
+        this.enemyHp = new int[other.enemyHp.length];
+        this.enemyBlock = new int[other.enemyBlock.length];
+        this.intents = new byte[other.intents.length];
+        copyFrom(other);
+    }
+
+    /**
+     * Copies the current combat of an engine: the hero, the enemies with their
+     * intents and target, and the weapons and armors of the backpack.
+     *
+     * @param engine   the engine of the combat
+     * @param hero     the hero of the combat
+     * @param backpack the backpack of the hero
+     * @return a simulation of the combat
+     * @throws IllegalStateException if the engine is not in a combat
+     */
+    public static CombatSimulation of(CombatEngine engine, Hero hero, Backpack backpack) {
+        Objects.requireNonNull(engine, "engine cannot be null");
+        Objects.requireNonNull(hero, "hero cannot be null");
+        Objects.requireNonNull(backpack, "backpack cannot be null");
+        if (!engine.isInCombat()) {
+            throw new IllegalStateException("the engine is not in a combat");
+        }
+        var usable = new ArrayList<Item>();
+        for (var item : backpack.getItems().values()) {
+            if (item instanceof Weapon || item instanceof Armor) {
+                usable.add(item);
+            }
+        }
+        var enemies = engine.getCurrentEnemies();
+        int count = enemies.size();
+        var maxHp = new int[count];
+        var attack = new int[count];
+        var defense = new int[count];
+        for (int i = 0; i < count; i++) {
+            var enemy = enemies.get(i);
+            maxHp[i] = enemy.getMaxHp();
+            attack[i] = enemy.getAttack();
+            defense[i] = enemy.getDefense();
+        }
+        var simulation = new CombatSimulation(usable.toArray(Item[]::new), maxHp, attack, defense, hero.getMaxHp(),
+                hero.getMaxEnergy());
+        simulation.heroHp = hero.getHp();
+        simulation.heroBlock = hero.getBlock();
+        simulation.heroEnergy = hero.getEnergy();
+        simulation.heroMana = hero.getMana();
+        for (int i = 0; i < count; i++) {
+            var enemy = enemies.get(i);
+            simulation.enemyHp[i] = enemy.getHp();
+            simulation.enemyBlock[i] = enemy.getBlock();
+            var intent = engine.getEnemyIntent(i);
+            simulation.intents[i] = intent == null ? NO_INTENT : (byte) intent.ordinal();
+        }
+        simulation.target = engine.getSelectedEnemyIndex();
+        return simulation;
+    }
+
+    /**
+     * Returns an independent copy of this simulation.
+     *
+     * @return a copy of this simulation
+     */
+    public CombatSimulation copy() {
+        return new CombatSimulation(this);
+    }
+
+    /**
+     * Resets this simulation to the state of another copy of the same combat,
+     * without allocating.
+     *
+     * @param other a copy of the same combat
+     * @throws IllegalArgumentException if other is not a copy of the same combat
+     */
+    public void copyFrom(CombatSimulation other) {
+        Objects.requireNonNull(other, "other cannot be null");
+        if (!isCopyOf(other)) {
+            throw new IllegalArgumentException("other is not a copy of the same combat");
+        }
+        heroHp = other.heroHp;
+        heroBlock = other.heroBlock;
+        heroEnergy = other.heroEnergy;
+        heroMana = other.heroMana;
+        System.arraycopy(other.enemyHp, 0, enemyHp, 0, enemyHp.length);
+        System.arraycopy(other.enemyBlock, 0, enemyBlock, 0, enemyBlock.length);
+        System.arraycopy(other.intents, 0, intents, 0, intents.length);
+        target = other.target;
+        turn = other.turn;
+    }
+
+    /**
+     * Checks if another simulation is a copy of the same combat, so that one can
+     * be copied into the other.
+     */
+    boolean isCopyOf(CombatSimulation other) {
+        return other.items == items && other.enemyMaxHp == enemyMaxHp;
+    }
+
+    /**
+     * Returns the current health points of the hero.
+     *
+     * @return the health points of the hero
+     */
+    public int getHeroHp() {
+        return heroHp;
+    }
+
+    /**
+     * Returns the maximum health points of the hero.
+     *
+     * @return the maximum health points of the hero
+     */
+    public int getHeroMaxHp() {
+        return heroMaxHp;
+    }
+
+    /**
+     * Returns the current block of the hero.
+     *
+     * @return the block of the hero
+     */
+    public int getHeroBlock() {
+        return heroBlock;
+    }
+
+    /**
+     * Returns the energy the hero has left this turn.
+     *
+     * @return the energy of the hero
+     */
+    public int getHeroEnergy() {
+        return heroEnergy;
+    }
+
+    /**
+     * Returns the mana of the hero.
+     *
+     * @return the mana of the hero
+     */
+    public int getHeroMana() {
+        return heroMana;
+    }
+
+    /**
+     * Returns the number of turns ended since the simulation was created.
+     *
+     * @return the number of turns played
+     */
+    public int getTurn() {
+        return turn;
+    }
+
+    /**
+     * Returns the number of enemies of the combat, dead ones included.
+     *
+     * @return the number of enemies
+     */
+    public int getEnemyCount() {
+        return enemyHp.length;
+    }
+
+    /**
+     * Returns the current health points of an enemy.
+     *
+     * @param enemy the index of the enemy
+     * @return the health points of the enemy
+     */
+    public int getEnemyHp(int enemy) {
+        return enemyHp[enemy];
+    }
+
+    /**
+     * Returns the maximum health points of an enemy.
+     *
+     * @param enemy the index of the enemy
+     * @return the maximum health points of the enemy
+     */
+    public int getEnemyMaxHp(int enemy) {
+        return enemyMaxHp[enemy];
+    }
+
+    /**
+     * Returns the current block of an enemy.
+     *
+     * @param enemy the index of the enemy
+     * @return the block of the enemy
+     */
+    public int getEnemyBlock(int enemy) {
+        return enemyBlock[enemy];
+    }
+
+    /**
+     * Returns the damage an enemy deals when it attacks.
+     *
+     * @param enemy the index of the enemy
+     * @return the attack of the enemy
+     */
+    public int getEnemyAttack(int enemy) {
+        return enemyAttack[enemy];
+    }
+
+    /**
+     * Returns the block an enemy gains when it defends.
+     *
+     * @param enemy the index of the enemy
+     * @return the defense of the enemy
+     */
+    public int getEnemyDefense(int enemy) {
+        return enemyDefense[enemy];
+    }
+
+    /**
+     * Checks if an enemy is alive.
+     *
+     * @param enemy the index of the enemy
+     * @return true if the enemy is alive, false otherwise
+     */
+    public boolean isEnemyAlive(int enemy) {
+        return enemyHp[enemy] > 0;
+    }
+
+    /**
+     * Returns the action an enemy will take at the end of the turn.
+     *
+     * @param enemy the index of the enemy
+     * @return the intent of the enemy, or null if it has none
+     */
+    public EnemyAction getEnemyIntent(int enemy) {
+        int intent = intents[enemy];
+        return intent == NO_INTENT ? null : EnemyAction.values()[intent];
+    }
+
+    /**
+     * Returns the damage the enemies intending to attack will deal at the end of
+     * the turn, before the block of the hero.
+     *
+     * @return the incoming damage
+     */
+    public int getIncomingDamage() {
+        int damage = 0;
+        for (int i = 0; i < enemyHp.length; i++) {
+            if (enemyHp[i] > 0 && intents[i] == EnemyAction.ATTACK.ordinal()) {
+                damage += enemyAttack[i];
+            }
+        }
+        return damage;
+    }
+
+    /**
+     * Returns the index of the enemy targeted by weapons.
+     *
+     * @return the index of the target enemy
+     */
+    public int getTarget() {
+        return target;
+    }
+
+    /**
+     * Changes the enemy targeted by weapons.
+     *
+     * @param enemy the index of the enemy to target
+     */
+    public void setTarget(int enemy) {
+        Objects.checkIndex(enemy, enemyHp.length);
+        target = enemy;
+    }
+
+    /**
+     * Returns the number of weapons and armors the hero can use.
+     *
+     * @return the number of usable items
+     */
+    public int getItemCount() {
+        return items.length;
+    }
+
+    /**
+     * Returns a usable item.
+     *
+     * @param item the index of the item
+     * @return the item
+     */
+    public Item getItem(int item) {
+        return items[item];
+    }
+
+    /**
+     * Returns the energy needed to use an item.
+     *
+     * @param item the index of the item
+     * @return the energy cost of the item
+     */
+    public int getItemEnergyCost(int item) {
+        return itemCost[item];
+    }
+
+    /**
+     * Returns the mana needed to use an item. Like {@link CombatEngine}, the
+     * simulation does not spend mana, planners can use it as a budget.
+     *
+     * @param item the index of the item
+     * @return the mana cost of the item
+     */
+    public int getItemManaCost(int item) {
+        return itemManaCost[item];
+    }
+
+    /**
+     * Returns the damage of an item, 0 for armors.
+     *
+     * @param item the index of the item
+     * @return the damage of the item
+     */
+    public int getItemDamage(int item) {
+        return itemDamage[item];
+    }
+
+    /**
+     * Checks if an item is a weapon, false for armors.
+     *
+     * @param item the index of the item
+     * @return true if the item is a weapon
+     */
+    public boolean isWeapon(int item) {
+        return itemIsWeapon[item];
+    }
+
+    /**
+     * Returns the protection of an item, 0 for weapons.
+     *
+     * @param item the index of the item
+     * @return the protection of the item
+     */
+    public int getItemProtection(int item) {
+        return itemProtection[item];
+    }
+
+    /**
+     * Checks if the hero has enough energy to use an item.
+     *
+     * @param item the index of the item
+     * @return true if the item can be used, false otherwise
+     */
+    public boolean canUseItem(int item) {
+        return !isOver() && heroEnergy >= itemCost[item];
+    }
+
+    /**
+     * Checks if the combat is over, won or lost.
+     *
+     * @return true if the hero or all the enemies are dead
+     */
+    public boolean isOver() {
+        return heroHp <= 0 || firstAliveEnemy() < 0;
+    }
+
+    /**
+     * Checks if the hero won the combat.
+     *
+     * @return true if all the enemies are dead and the hero is alive
+     */
+    public boolean isWon() {
+        return heroHp > 0 && firstAliveEnemy() < 0;
+    }
+
+    /**
+     * Uses an item like {@link CombatEngine#useItem}: weapons hit the target
+     * enemy, or the first alive one if the target is dead, armors protect the
+     * hero.
+     *
+     * @param item the index of the item
+     * @return true if the item was used, false if the hero lacks energy or the
+     *         combat is over
+     */
+    public boolean useItem(int item) {
+        if (!canUseItem(item)) {
+            return false;
+        }
+        heroEnergy -= itemCost[item];
+        if (itemIsWeapon[item]) {
+            int enemy = target < enemyHp.length && enemyHp[target] > 0 ? target : firstAliveEnemy();
+            int damage = itemDamage[item];
+            if (enemyBlock[enemy] >= damage) {
+                enemyBlock[enemy] -= damage;
+            } else {
+                enemyHp[enemy] = Math.max(0, enemyHp[enemy] - (damage - enemyBlock[enemy]));
+                enemyBlock[enemy] = 0;
+            }
+        } else {
+            heroBlock += itemProtection[item];
+        }
+        return true;
+    }
+
+    /**
+     * Ends the turn of the hero: each alive enemy drops its block and follows its
+     * intent, then if the hero survives the enemies choose their next intents and
+     * a new hero turn starts.
+     *
+     * @param random the random generator deciding the next intents
+     */
+    public void endTurn(RandomGenerator random) {
+        Objects.requireNonNull(random, "random cannot be null");
+        if (isOver()) {
+            return;
+        }
+        playEnemyTurn();
+        if (heroHp <= 0) {
+            return;
+        }
+        decideIntents(random);
+        startHeroTurn();
+    }
+
+    /**
+     * Plays the turn of the enemies with their current intents: each alive enemy
+     * drops its block then attacks or defends. The next intents are not chosen,
+     * which lets a search enumerate them with
+     * {@link #setEnemyIntent(int, EnemyAction)}.
+     */
+    public void playEnemyTurn() {
+        turn++;
+        for (int i = 0; i < enemyHp.length; i++) {
+            if (enemyHp[i] <= 0 || intents[i] == NO_INTENT) {
+                continue;
+            }
+            enemyBlock[i] = 0;
+            if (intents[i] == EnemyAction.ATTACK.ordinal()) {
+                int damage = enemyAttack[i];
+                if (heroBlock >= damage) {
+                    heroBlock -= damage;
+                } else {
+                    heroHp = Math.max(0, heroHp - (damage - heroBlock));
+                    heroBlock = 0;
+                }
+            } else {
+                enemyBlock[i] += enemyDefense[i];
+            }
+        }
+    }
+
+    /**
+     * Starts a turn of the hero, like {@link CombatEngine#heroTurn}: the energy is
+     * refilled and the block of the hero is lost.
+     */
+    public void startHeroTurn() {
+        heroEnergy = heroMaxEnergy;
+        heroBlock = 0;
+    }
+
+    /**
+     * Sets the action an enemy will take at the end of the turn.
+     *
+     * @param enemy  the index of the enemy
+     * @param intent the intent of the enemy, or null for none
+     */
+    public void setEnemyIntent(int enemy, EnemyAction intent) {
+        intents[enemy] = intent == null ? NO_INTENT : (byte) intent.ordinal();
+    }
+
+    /**
+     * Chooses the next intent of every alive enemy, like
+     * {@link CombatEngine#decideEnemyIntents()}.
+     *
+     * @param random the random generator deciding the intents
+     */
+    public void decideIntents(RandomGenerator random) {
+        Objects.requireNonNull(random, "random cannot be null");
+        for (int i = 0; i < enemyHp.length; i++) {
+            intents[i] = enemyHp[i] > 0 ? (byte) CombatEngine.rollEnemyAction(random).ordinal() : NO_INTENT;
+        }
+    }
+
+    /**
+     * Returns a 64-bit hash of the state of the combat (hero, enemies, intents
+     * and target), for transposition tables; two copies in the same state have
+     * the same hash.
+     */
+    long stateHash() {
+        long hash = mix(mix(0, heroHp), heroBlock);
+        hash = mix(hash, heroEnergy);
+        hash = mix(hash, target);
+        for (int i = 0; i < enemyHp.length; i++) {
+            hash = mix(hash, enemyHp[i]);
+            hash = mix(hash, enemyBlock[i]);
+            hash = mix(hash, intents[i]);
+        }
+        return hash;
+    }
+
+    /**
+     * Combines a value into a hash with the finalizer of SplitMix64.
+     */
+    static long mix(long hash, long value) {
+        long z = (hash ^ value) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private int firstAliveEnemy() {
+        for (int i = 0; i < enemyHp.length; i++) {
+            if (enemyHp[i] > 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return "CombatSimulation hero " + heroHp + "hp " + heroBlock + " block " + heroEnergy + " energy, enemies "
+                + Arrays.toString(enemyHp) + " hp " + Arrays.toString(enemyBlock) + " block";
+    }
+}
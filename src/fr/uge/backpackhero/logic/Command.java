@@ -0,0 +1,152 @@
+package fr.uge.backpackhero.logic;
+
+import java.util.Objects;
+
+import fr.uge.backpackhero.model.item.Item;
+import fr.uge.backpackhero.model.level.Position;
+
+/**
+ * A player action that a {@link GameSession} can execute.
+ * Commands only describe what the player wants to do; the session checks
+ * whether the action is allowed in the current state of the game.
+ *
+ */
+public sealed interface Command {
+
+    /**
+     * Moves the hero to an adjacent room of the current floor and enters it.
+     *
+     * @param target the position of the room to move to
+     */
+    record Move(Position target) implements Command {
+
+        /**
+         * Creates a new Move command.
+         *
+         * @param target the position of the room to move to
+         */
+        public Move {
+            Objects.requireNonNull(target, "target cannot be null");
+        }
+    }
+
+    /**
+     * Uses the item covering a cell of the backpack during a combat.
+     *
+     * @param cell any cell covered by the item
+     */
+    record UseItem(Position cell) implements Command {
+
+        /**
+         * Creates a new UseItem command.
+         *
+         * @param cell any cell covered by the item
+         */
+        public UseItem {
+            Objects.requireNonNull(cell, "cell cannot be null");
+        }
+    }
+
+    /**
+     * Ends the turn of the hero during a combat, letting the enemies act.
+     */
+    record EndTurn() implements Command {
+    }
+
+    /**
+     * Takes an item of the loot screen and places it in the backpack.
+     *
+     * @param item   the loot item to take
+     * @param anchor the anchor position of the item in the backpack
+     */
+    record TakeLoot(Item item, Position anchor) implements Command {
+
+        /**
+         * Creates a new TakeLoot command.
+         *
+         * @param item   the loot item to take
+         * @param anchor the anchor position of the item in the backpack
+         */
+        public TakeLoot {
+            Objects.requireNonNull(item, "item cannot be null");
+            Objects.requireNonNull(anchor, "anchor cannot be null");
+        }
+    }
+
+    /**
+     * Puts the most valuable combination of the remaining loot items in the
+     * backpack, rotating them if needed, as found by a {@link LootPacker}.
+     */
+    record PackLoot() implements Command {
+    }
+
+    /**
+     * Closes the loot screen, leaving the remaining items behind.
+     */
+    record LeaveLoot() implements Command {
+    }
+
+    /**
+     * Buys an item of the merchant of the current room and places it in the
+     * backpack.
+     *
+     * @param item   the item to buy
+     * @param anchor the anchor position of the item in the backpack
+     */
+    record Buy(Item item, Position anchor) implements Command {
+
+        /**
+         * Creates a new Buy command.
+         *
+         * @param item   the item to buy
+         * @param anchor the anchor position of the item in the backpack
+         */
+        public Buy {
+            Objects.requireNonNull(item, "item cannot be null");
+            Objects.requireNonNull(anchor, "anchor cannot be null");
+        }
+    }
+
+    /**
+     * Sells the item covering a cell of the backpack to the merchant of the
+     * current room, for half its price.
+     *
+     * @param cell any cell covered by the item
+     */
+    record Sell(Position cell) implements Command {
+
+        /**
+         * Creates a new Sell command.
+         *
+         * @param cell any cell covered by the item
+         */
+        public Sell {
+            Objects.requireNonNull(cell, "cell cannot be null");
+        }
+    }
+
+    /**
+     * Unlocks a cell of the backpack after a level up.
+     *
+     * @param cell the cell to unlock
+     */
+    record Unlock(Position cell) implements Command {
+
+        /**
+         * Creates a new Unlock command.
+         *
+         * @param cell the cell to unlock
+         */
+        public Unlock {
+            Objects.requireNonNull(cell, "cell cannot be null");
+        }
+    }
+
+    /**
+     * Answers the offer of a healer.
+     *
+     * @param accept true to pay the healer, false to decline
+     */
+    record Heal(boolean accept) implements Command {
+    }
+}
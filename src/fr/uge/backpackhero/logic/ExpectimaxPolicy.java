@@ -0,0 +1,418 @@
+package fr.uge.backpackhero.logic;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.random.RandomGenerator;
+
+/**
+ * A hero policy that searches the best items to use this turn with an
+ * expectimax search.
+ * <p>
+ * The hero nodes try every affordable item, on every alive enemy for weapons,
+ * or ending the turn. The intents of the current turn are known, so the turn
+ * of the enemies is played as is; the intents of the next turns are chance
+ * nodes where every combination of attack and defend is equally likely, like
+ * {@link CombatEngine#decideEnemyAction}. Damage and block add up whatever the
+ * order of the items, so the items of a turn are only tried in one order
+ * (increasing action numbers), and identical items are only tried once.
+ * <p>
+ * Positions reached again (another order of the same chance outcomes, two
+ * ways to deal the same damage...) are found in a transposition table: open
+ * addressing over primitive arrays, keyed by a 64-bit hash of the state,
+ * the first action allowed and the depth left, and stamped with a search
+ * number so it never needs clearing. The search deepens one turn at a time
+ * until the depth limit or the time limit; a depth cut by the time limit is
+ * dropped and the previous one is used. A depth of one turn is always
+ * completed.
+ * <p>
+ * Each thread searches with its own table, so one policy can drive the
+ * rollouts of a {@link CombatEstimator}.
+ *
+ */
+public final class ExpectimaxPolicy implements HeroPolicy {
+
+    /** Default number of hero turns searched. */
+    private static final int DEFAULT_MAX_DEPTH = 3;
+    /** Default time limit of a search. */
+    private static final Duration DEFAULT_TIME_LIMIT = Duration.ofMillis(20);
+    /** Default log2 of the number of entries of the transposition table. */
+    private static final int DEFAULT_TABLE_BITS = 16;
+    /** Number of nodes between two checks of the clock. */
+    private static final int CLOCK_CHECK_INTERVAL = 1024;
+    /** Actions searched per turn at most, in case an item costs no energy. */
+    private static final int MAX_ACTIONS_PER_TURN = 8;
+    private static final double WIN = 10_000;
+    private static final double LOSS = -10_000;
+    /**
+     * Cost of a turn, in health points. Without it, blocking forever looks as
+     * good as attacking, and a won combat as good in ten turns as in one.
+     */
+    private static final double TURN_COST = 1;
+
+    private final int maxDepth;
+    private final long timeLimitNanos;
+    private final int tableBits;
+    private final ThreadLocal<Search> searches;
+
+    /**
+     * The result of a search.
+     *
+     * @param items        the items to use this turn, in order, as indexes of the
+     *                     simulation; empty to end the turn at once. The first
+     *                     item is always the best one, the plan may stop before
+     *                     the end of the turn if the table lost the next
+     *                     positions
+     * @param targets      the enemy to target with each item, -1 for armors
+     * @param value        the expected value of the plan
+     * @param depth        the number of hero turns fully searched
+     * @param nodes        the number of hero nodes searched
+     * @param elapsedNanos the time spent searching, in nanoseconds
+     */
+    public record Plan(int[] items, int[] targets, double value, int depth, long nodes, long elapsedNanos) {
+
+        /**
+         * Creates a new Plan.
+         *
+         * @param items        the items to use this turn, in order
+         * @param targets      the enemy to target with each item
+         * @param value        the expected value of the plan
+         * @param depth        the number of hero turns fully searched
+         * @param nodes        the number of hero nodes searched
+         * @param elapsedNanos the time spent searching, in nanoseconds
+         */
+        public Plan {
+            items = items.clone();
+            targets = targets.clone();
+        }
+
+        /**
+         * Returns the items to use this turn, in order.
+         *
+         * @return a copy of the item indexes
+         */
+        @Override
+        public int[] items() {
+            return items.clone();
+        }
+
+        /**
+         * Returns the enemy to target with each item, -1 for armors.
+         *
+         * @return a copy of the target indexes
+         */
+        @Override
+        public int[] targets() {
+            return targets.clone();
+        }
+
+        /**
+         * Returns the search speed.
+         *
+         * @return the number of nodes searched per second
+         */
+        public double nodesPerSecond() {
+            return elapsedNanos == 0 ? 0 : nodes * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "Plan items=" + Arrays.toString(items) + " targets=" + Arrays.toString(targets) + " value="
+                    + value + " depth=" + depth + " nodes=" + nodes + " nodes/s=" + Math.round(nodesPerSecond());
+        }
+    }
+
+    /**
+     * Creates a new ExpectimaxPolicy.
+     *
+     * @param maxDepth  the number of hero turns to search at most
+     * @param timeLimit the time after which the search stops deepening
+     * @param tableBits the log2 of the number of entries of the transposition
+     *                  table, between 4 and 24
+     */
+    public ExpectimaxPolicy(int maxDepth, Duration timeLimit, int tableBits) {
+        if (maxDepth < 1) {
+            throw new IllegalArgumentException("maxDepth must be positive");
+        }
+        Objects.requireNonNull(timeLimit, "timeLimit cannot be null");
+        if (timeLimit.isNegative() || timeLimit.isZero()) {
+            throw new IllegalArgumentException("timeLimit must be positive");
+        }
+        if (tableBits < 4 || tableBits > 24) {
+            throw new IllegalArgumentException("tableBits must be between 4 and 24");
+        }
+        this.maxDepth = maxDepth;
+        this.timeLimitNanos = timeLimit.toNanos();
+        this.tableBits = tableBits;
+        this.searches = ThreadLocal.withInitial(() -> new Search(this.tableBits));
+    }
+
+    /**
+     * Creates a new ExpectimaxPolicy searching 3 turns in 20 milliseconds at most.
+     */
+    public ExpectimaxPolicy() {
+        this(DEFAULT_MAX_DEPTH, DEFAULT_TIME_LIMIT, DEFAULT_TABLE_BITS);
+    }
+
+    @Override
+    public int chooseItem(CombatSimulation combat, RandomGenerator random) {
+        Objects.requireNonNull(combat, "combat cannot be null");
+        var plan = plan(combat);
+        if (plan.items.length == 0) {
+            return -1;
+        }
+        if (plan.targets[0] >= 0) {
+            combat.setTarget(plan.targets[0]);
+        }
+        return plan.items[0];
+    }
+
+    /**
+     * Searches the best items to use for the rest of the turn. The simulation is
+     * not modified.
+     *
+     * @param combat the simulated combat, whose current turn is the hero's
+     * @return the best plan found
+     */
+    public Plan plan(CombatSimulation combat) {
+        Objects.requireNonNull(combat, "combat cannot be null");
+        return searches.get().run(combat, maxDepth, System.nanoTime() + timeLimitNanos);
+    }
+
+    /**
+     * The search of one thread, with its transposition table and a copy of the
+     * combat per level of the search.
+     */
+    private static final class Search {
+        private final long[] keys;
+        private final double[] values;
+        private final short[] bestActions; // action played first from the entry, -1 to end the turn
+        private final int[] stamps; // search number of the entry, older entries are empty
+        private final int mask;
+        private int stamp;
+
+        private CombatSimulation[] stack = new CombatSimulation[0];
+        private int[] representative; // index of the first item with the same stats, per item
+        private int enemyCount;
+        private long nodes;
+        private long deadline;
+        private boolean timeCheck; // false while searching the first depth
+        private boolean aborted;
+
+        private Search(int tableBits) {
+            int size = 1 << tableBits;
+            this.keys = new long[size];
+            this.values = new double[size];
+            this.bestActions = new short[size];
+            this.stamps = new int[size];
+            this.mask = size - 1;
+        }
+
+        private Plan run(CombatSimulation root, int maxDepth, long deadline) {
+            long start = System.nanoTime();
+            prepare(root, maxDepth);
+            this.deadline = deadline;
+            this.nodes = 0;
+            Plan plan = null;
+            for (int depth = 1; depth <= maxDepth; depth++) {
+                nextStamp();
+                timeCheck = depth > 1;
+                aborted = false;
+                stack[0].copyFrom(root);
+                double depthValue = heroNode(0, depth, 0, 0);
+                if (aborted) {
+                    break;
+                }
+                // Read the plan before a deeper search replaces the entries
+                plan = principalVariation(root, depth, depthValue, start);
+                if (root.isOver()) {
+                    break;
+                }
+            }
+            return plan;
+        }
+
+        private void prepare(CombatSimulation root, int maxDepth) {
+            enemyCount = root.getEnemyCount();
+            int plies = maxDepth * (MAX_ACTIONS_PER_TURN + 2) + 2;
+            if (stack.length < plies || !stack[0].isCopyOf(root)) {
+                stack = new CombatSimulation[plies];
+                for (int i = 0; i < plies; i++) {
+                    stack[i] = root.copy();
+                }
+            }
+            int itemCount = root.getItemCount();
+            representative = new int[itemCount];
+            for (int i = 0; i < itemCount; i++) {
+                representative[i] = i;
+                for (int j = 0; j < i; j++) {
+                    if (root.getItemEnergyCost(j) == root.getItemEnergyCost(i)
+                            && root.getItemDamage(j) == root.getItemDamage(i)
+                            && root.getItemProtection(j) == root.getItemProtection(i)
+                            && root.isWeapon(j) == root.isWeapon(i)) {
+                        representative[i] = j;
+                        break;
+                    }
+                }
+            }
+        }
+
+        private void nextStamp() {
+            stamp++;
+            if (stamp == 0) {
+                // The stamps wrapped around, old entries could look current
+                Arrays.fill(stamps, 0);
+                stamp = 1;
+            }
+        }
+
+        /**
+         * Value of a hero node: the best of ending the turn and of each action
+         * numbered at least firstAction.
+         */
+        private double heroNode(int ply, int depthLeft, int firstAction, int actionsDone) {
+            var combat = stack[ply];
+            if (combat.isOver()) {
+                return terminal(combat);
+            }
+            nodes++;
+            if (timeCheck && nodes % CLOCK_CHECK_INTERVAL == 0 && System.nanoTime() - deadline > 0) {
+                aborted = true;
+            }
+            if (aborted) {
+                return 0;
+            }
+            long key = CombatSimulation.mix(CombatSimulation.mix(combat.stateHash(), firstAction),
+                    depthLeft * 16 + actionsDone);
+            int slot = (int) (key ^ (key >>> 32)) & mask;
+            if (stamps[slot] == stamp && keys[slot] == key) {
+                return values[slot];
+            }
+
+            double best = endTurn(ply, depthLeft);
+            int bestAction = -1;
+            if (actionsDone < MAX_ACTIONS_PER_TURN) {
+                int actionCount = combat.getItemCount() * enemyCount;
+                var child = stack[ply + 1];
+                for (int action = firstAction; action < actionCount; action++) {
+                    int item = action / enemyCount;
+                    int target = action % enemyCount;
+                    if (representative[item] != item || !combat.canUseItem(item)) {
+                        continue;
+                    }
+                    boolean weapon = combat.isWeapon(item);
+                    if (weapon ? !combat.isEnemyAlive(target) : target != 0) {
+                        continue;
+                    }
+                    child.copyFrom(combat);
+                    if (weapon) {
+                        child.setTarget(target);
+                    }
+                    child.useItem(item);
+                    double value = heroNode(ply + 1, depthLeft, action, actionsDone + 1);
+                    if (value > best) {
+                        best = value;
+                        bestAction = action;
+                    }
+                }
+            }
+            if (!aborted) {
+                keys[slot] = key;
+                values[slot] = best;
+                bestActions[slot] = (short) bestAction;
+                stamps[slot] = stamp;
+            }
+            return best;
+        }
+
+        /**
+         * Value of ending the turn: the enemies play their known intents, then
+         * every combination of next intents is equally likely.
+         */
+        private double endTurn(int ply, int depthLeft) {
+            var combat = stack[ply + 1];
+            combat.copyFrom(stack[ply]);
+            combat.playEnemyTurn();
+            if (combat.isOver()) {
+                return terminal(combat);
+            }
+            if (depthLeft == 1) {
+                return evaluate(combat);
+            }
+            int aliveCount = 0;
+            for (int i = 0; i < enemyCount; i++) {
+                if (combat.isEnemyAlive(i)) {
+                    aliveCount++;
+                }
+            }
+            combat.startHeroTurn();
+            var outcome = stack[ply + 2];
+            int outcomes = 1 << aliveCount;
+            double sum = 0;
+            for (int bits = 0; bits < outcomes; bits++) {
+                outcome.copyFrom(combat);
+                // The n-th alive enemy attacks if the n-th bit is set
+                int bit = 0;
+                for (int i = 0; i < enemyCount; i++) {
+                    if (combat.isEnemyAlive(i)) {
+                        outcome.setEnemyIntent(i, (bits & (1 << bit++)) != 0 ? EnemyAction.ATTACK : EnemyAction.DEFEND);
+                    }
+                }
+                sum += heroNode(ply + 2, depthLeft - 1, 0, 0);
+                if (aborted) {
+                    return 0;
+                }
+            }
+            return sum / outcomes;
+        }
+
+        private static double terminal(CombatSimulation combat) {
+            return combat.isWon() ? WIN + combat.getHeroHp() - TURN_COST * combat.getTurn() : LOSS;
+        }
+
+        /**
+         * Value of a combat that is not over at the end of the search: health left
+         * against the health the enemies still have and the turns spent.
+         */
+        private double evaluate(CombatSimulation combat) {
+            double enemyHp = 0;
+            for (int i = 0; i < enemyCount; i++) {
+                enemyHp += combat.getEnemyHp(i);
+            }
+            return combat.getHeroHp() - enemyHp - TURN_COST * combat.getTurn();
+        }
+
+        /**
+         * Replays the best actions stored in the table from the root until the
+         * end of the turn.
+         */
+        private Plan principalVariation(CombatSimulation root, int depth, double value, long start) {
+            var items = new int[MAX_ACTIONS_PER_TURN];
+            var targets = new int[MAX_ACTIONS_PER_TURN];
+            int count = 0;
+            var combat = root.copy();
+            int firstAction = 0;
+            while (depth > 0 && count < MAX_ACTIONS_PER_TURN && !combat.isOver()) {
+                long key = CombatSimulation.mix(CombatSimulation.mix(combat.stateHash(), firstAction),
+                        depth * 16 + count);
+                int slot = (int) (key ^ (key >>> 32)) & mask;
+                if (stamps[slot] != stamp || keys[slot] != key || bestActions[slot] < 0) {
+                    break;
+                }
+                int action = bestActions[slot];
+                int item = action / enemyCount;
+                boolean weapon = combat.isWeapon(item);
+                items[count] = item;
+                targets[count] = weapon ? action % enemyCount : -1;
+                if (weapon) {
+                    combat.setTarget(targets[count]);
+                }
+                combat.useItem(item);
+                count++;
+                firstAction = action;
+            }
+            return new Plan(Arrays.copyOf(items, count), Arrays.copyOf(targets, count), value, depth, nodes,
+                    System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,418 @@
+package fr.uge.backpackhero.logic;
+
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import fr.uge.backpackhero.model.item.Gold;
+import fr.uge.backpackhero.model.level.Floor;
+import fr.uge.backpackhero.model.level.Position;
+import fr.uge.backpackhero.model.level.Room;
+import fr.uge.backpackhero.model.level.RoomType;
+import fr.uge.backpackhero.model.loot.LootTables;
+
+/**
+ * Runs a game by executing {@link Command}s on a {@link GameState}.
+ * The session holds the rules of the game (moving in the dungeon, combat
+ * turns, loot, merchants, healers and cell unlocking) and does not depend on
+ * any graphical code, so games can be played headless, for instance to
+ * simulate many games in a row. The graphical handlers translate the input of
+ * the player into commands and draw the state afterwards.
+ * Messages describing what happened are sent to a listener, which does nothing
+ * by default.
+ *
+ */
+public final class GameSession {
+
+    private final GameState state;
+    private final Consumer<String> messages;
+    private final LootPacker packer = new LootPacker();
+
+    /**
+     * Creates a session playing a new game with the default backpack size.
+     */
+    public GameSession() {
+        this(new GameState());
+    }
+
+    /**
+     * Creates a session playing the given game, without messages.
+     *
+     * @param state the game to play
+     */
+    public GameSession(GameState state) {
+        this(state, message -> {
+        });
+    }
+
+    /**
+     * Creates a session playing the given game.
+     *
+     * @param state    the game to play
+     * @param messages the listener receiving the messages of the game
+     */
+    public GameSession(GameState state, Consumer<String> messages) {
+        this.state = Objects.requireNonNull(state, "state cannot be null");
+        this.messages = Objects.requireNonNull(messages, "messages cannot be null");
+    }
+
+    /**
+     * Returns the game played by this session.
+     *
+     * @return the game state
+     */
+    public GameState getState() {
+        return state;
+    }
+
+    /**
+     * Checks if the game is finished, lost or won.
+     *
+     * @return true if the game is over or won, false otherwise
+     */
+    public boolean isFinished() {
+        return state.isGameOver() || state.isVictory();
+    }
+
+    /**
+     * Executes a command of the player.
+     * Commands that are not allowed in the current state of the game leave it
+     * unchanged.
+     *
+     * @param command the command to execute
+     * @return true if the command was applied, false otherwise
+     */
+    public boolean execute(Command command) {
+        Objects.requireNonNull(command, "command cannot be null");
+        if (isFinished()) {
+            return false;
+        }
+        return switch (command) {
+            case Command.Move move -> move(move.target());
+            case Command.UseItem use -> useItem(use.cell());
+            case Command.EndTurn endTurn -> endTurn();
+            case Command.TakeLoot take -> takeLoot(take);
+            case Command.PackLoot pack -> packLoot();
+            case Command.LeaveLoot leave -> leaveLoot();
+            case Command.Buy buy -> buy(buy);
+            case Command.Sell sell -> sell(sell.cell());
+            case Command.Unlock unlock -> unlock(unlock.cell());
+            case Command.Heal heal -> heal(heal.accept());
+        };
+    }
+
+    private boolean move(Position target) {
+        var current = state.getState();
+        if (current == State.COMBAT || current == State.HEALER_PROMPT || current == State.LOOT_SCREEN
+                || state.getActivePopup() != null) {
+            return false;
+        }
+        var floor = state.getCurrentFloor();
+        var previous = state.getPosition();
+        if (!isMoveAllowed(previous, target, floor)) {
+            return false;
+        }
+        state.setPosition(target);
+        var room = floor.getRoom(target);
+
+        switch (room.getType()) {
+            case EXIT -> state.exitFloor();
+            case HEALER -> {
+                int heal = room.getHealAmount();
+                state.openHealerPrompt(previous, heal, Math.max(1, heal / 2));
+            }
+            case TREASURE -> {
+                var treasureItems = room.getTreasureItems();
+                if (treasureItems != null && !treasureItems.isEmpty()) {
+                    int goldAmount = room.collectGold();
+                    if (goldAmount > 0) {
+                        state.getBackpack().addGold(goldAmount);
+                        messages.accept("Found " + goldAmount + " gold!");
+                    }
+                    state.openLootScreen(treasureItems);
+                    messages.accept("Treasure room! " + treasureItems.size() + " items to choose from.");
+                }
+            }
+            case ENEMY -> {
+                var enemies = room.getEnemies();
+                if (enemies != null && !enemies.isEmpty()) {
+                    var combat = state.getCombatEngine();
+                    combat.startCombat(enemies);
+                    combat.heroTurn(state.getHero(), state.getBackpack());
+                    state.setState(State.COMBAT);
+                }
+            }
+            default -> {
+            }
+        }
+        return true;
+    }
+
+    private static boolean isMoveAllowed(Position current, Position target, Floor floor) {
+        if (!target.checkBounds(floor.getWidth(), floor.getHeight())) {
+            return false;
+        }
+        if (floor.getRoom(target) == null) {
+            return false;
+        }
+        int deltaX = Math.abs(current.x() - target.x());
+        int deltaY = Math.abs(current.y() - target.y());
+        return (deltaX == 1 && deltaY == 0) || (deltaX == 0 && deltaY == 1);
+    }
+
+    private boolean useItem(Position cell) {
+        if (state.getState() != State.COMBAT) {
+            return false;
+        }
+        var item = state.getBackpack().getItemAt(cell);
+        if (item.isEmpty()) {
+            return false;
+        }
+        if (!state.getCombatEngine().useItem(state.getHero(), item.get())) {
+            messages.accept("Cannot use item in combat.");
+            return false;
+        }
+        if (!checkEndOfCombat()) {
+            processEnemiesTurn();
+        }
+        return true;
+    }
+
+    private boolean endTurn() {
+        if (state.getState() != State.COMBAT) {
+            return false;
+        }
+        state.getCombatEngine().endHeroTurn(state.getHero());
+        messages.accept("Turn ended.");
+        processEnemiesTurn();
+        return true;
+    }
+
+    /**
+     * Lets the enemies act once the hero has no energy left, then starts the next
+     * turn of the hero.
+     */
+    private void processEnemiesTurn() {
+        var combat = state.getCombatEngine();
+        var hero = state.getHero();
+        if (hero.getEnergy() != 0) {
+            return;
+        }
+        var enemies = combat.getCurrentEnemies();
+        for (int i = 0; i < enemies.size(); i++) {
+            var enemy = enemies.get(i);
+            if (enemy.isAlive()) {
+                var action = combat.getEnemyIntent(i);
+                if (action != null) {
+                    combat.enemyTurn(hero, enemy, action);
+                }
+            }
+        }
+        if (!hero.isAlive()) {
+            heroDied();
+            return;
+        }
+        combat.decideEnemyIntents();
+        combat.heroTurn(hero, state.getBackpack());
+    }
+
+    /**
+     * Gives the rewards of the combat and opens the loot screen if it is over.
+     */
+    private boolean checkEndOfCombat() {
+        var combat = state.getCombatEngine();
+        var hero = state.getHero();
+        if (!combat.isCombatOver(hero)) {
+            return false;
+        }
+        if (!hero.isAlive()) {
+            heroDied();
+            return true;
+        }
+
+        var lootItems = LootTables.generateLootFromEnemies(combat.getCurrentEnemies(), state.getFloor(),
+                state.getLootRandom());
+        int goldReward = combat.calculateGoldReward();
+        int xpReward = combat.calculateXpReward();
+        state.getBackpack().addGold(goldReward);
+        int levelsGained = hero.addXp(xpReward);
+        var journal = combat.getJournal();
+        journal.record(CombatJournal.EventType.GOLD_REWARD, combat.getRound(), CombatJournal.HERO,
+                CombatJournal.NOBODY, goldReward, state.getBackpack().goldAmount());
+        journal.record(CombatJournal.EventType.XP_REWARD, combat.getRound(), CombatJournal.HERO,
+                CombatJournal.NOBODY, xpReward, hero.getLevel());
+
+        // Each level gives 3 cells to unlock, or 4 for even levels
+        if (levelsGained > 0) {
+            int totalCells = 0;
+            for (int i = 0; i < levelsGained; i++) {
+                int levelNum = hero.getLevel() - levelsGained + i + 1;
+                totalCells += (levelNum % 2 == 0) ? 4 : 3;
+            }
+            state.startCellUnlockMode(totalCells);
+            messages.accept("LEVEL UP! Level " + hero.getLevel() + " - Choose " + totalCells + " cells to unlock!");
+        }
+
+        state.openLootScreen(lootItems);
+        messages.accept("Combat won! Gained " + goldReward + " gold, " + xpReward + " XP and " + lootItems.size()
+                + " items to choose from.");
+        if (levelsGained > 0) {
+            messages.accept("You gained " + levelsGained + " level(s)! Now level " + hero.getLevel());
+        }
+        return true;
+    }
+
+    private void heroDied() {
+        messages.accept("The hero is dead.");
+        state.setGameOver(true);
+        state.setState(State.EXPLORATION);
+        state.getCombatEngine().endCombat();
+    }
+
+    private boolean takeLoot(Command.TakeLoot take) {
+        var loot = state.getAvailableLoot();
+        var item = take.item();
+        if (state.getState() != State.LOOT_SCREEN || loot == null || !loot.contains(item)) {
+            return false;
+        }
+        if (!state.getBackpack().place(item, take.anchor())) {
+            messages.accept("Cannot place item here.");
+            return false;
+        }
+        state.removeLootItem(item);
+        if (item.equals(state.getSelectedLootItem())) {
+            state.setSelectedLootItem(null);
+        }
+        messages.accept("Placed loot item: " + item.getName());
+        return true;
+    }
+
+    private boolean packLoot() {
+        var loot = state.getAvailableLoot();
+        if (state.getState() != State.LOOT_SCREEN || loot == null || loot.isEmpty()) {
+            return false;
+        }
+        var backpack = state.getBackpack();
+        var result = packer.solve(backpack, loot);
+        if (!backpack.placeAll(result.placements())) {
+            messages.accept("Cannot pack the loot.");
+            return false;
+        }
+        for (var placement : result.placements()) {
+            state.removeLootItem(placement.item());
+        }
+        state.setSelectedLootItem(null);
+        messages.accept("Packed " + result.placements().size() + " loot item(s) worth " + result.value() + "g"
+                + (result.optimal() ? "." : " (best found in time)."));
+        return true;
+    }
+
+    private boolean leaveLoot() {
+        if (state.getState() != State.LOOT_SCREEN) {
+            return false;
+        }
+        state.closeLootScreen();
+        var combat = state.getCombatEngine();
+        if (combat.isInCombat()) {
+            combat.endCombat();
+        }
+        // The room is emptied, whether its loot came from a treasure or a combat
+        state.getCurrentFloor().setRoom(state.getPosition(), new Room(RoomType.CORRIDOR, null, null, null, 0, 0));
+        messages.accept("Loot screen closed.");
+        return true;
+    }
+
+    private boolean buy(Command.Buy buy) {
+        var room = merchantRoom();
+        if (room == null || room.getMerchantItems() == null) {
+            return false;
+        }
+        var shop = room.getMerchantItems();
+        var item = buy.item();
+        Integer price = shop.get(item);
+        if (price == null) {
+            return false;
+        }
+        var backpack = state.getBackpack();
+        // Gold is only spent once the item is known to fit, so nothing has to be refunded
+        if (backpack.goldAmount() < price) {
+            messages.accept("Not enough gold.");
+            return false;
+        }
+        if (!backpack.canPlace(item, buy.anchor())) {
+            messages.accept("Cannot place item here.");
+            return false;
+        }
+        backpack.spendGold(price);
+        backpack.place(item, buy.anchor());
+        shop.remove(item);
+        if (item.equals(state.getSelectedMerchantItem())) {
+            state.setSelectedMerchantItem(null);
+        }
+        messages.accept("Bought: " + item.getName() + " for " + price + "g");
+        return true;
+    }
+
+    private boolean sell(Position cell) {
+        if (merchantRoom() == null) {
+            return false;
+        }
+        var backpack = state.getBackpack();
+        var anchor = backpack.getAnchorAt(cell);
+        if (anchor.isEmpty()) {
+            return false;
+        }
+        var item = backpack.getItems().get(anchor.get());
+        if (item instanceof Gold) {
+            messages.accept("Cannot sell gold!");
+            return false;
+        }
+        int sellPrice = item.getPrice() / 2;
+        backpack.removeItem(anchor.get());
+        backpack.addGold(sellPrice);
+        messages.accept("Sold: " + item.getName() + " for " + sellPrice + "g");
+        return true;
+    }
+
+    /**
+     * Returns the room of the hero if it is a merchant the hero can trade with.
+     */
+    private Room merchantRoom() {
+        if (state.getState() == State.COMBAT) {
+            return null;
+        }
+        var room = state.getCurrentFloor().getRoom(state.getPosition());
+        return room != null && room.getType() == RoomType.MERCHANT ? room : null;
+    }
+
+    private boolean unlock(Position cell) {
+        if (state.getState() != State.CELL_UNLOCK) {
+            return false;
+        }
+        if (!state.getBackpack().canUnlockCell(cell)) {
+            messages.accept("Cannot unlock this cell. Choose an adjacent cell.");
+            return false;
+        }
+        state.unlockCellAt(cell);
+        messages.accept("Cell unlocked! " + state.getCellsToUnlock() + " remaining.");
+        if (state.getState() != State.CELL_UNLOCK) {
+            messages.accept("All cells unlocked!");
+        }
+        return true;
+    }
+
+    private boolean heal(boolean accept) {
+        if (state.getState() != State.HEALER_PROMPT) {
+            return false;
+        }
+        if (accept) {
+            if (!state.getBackpack().spendGold(state.getHealerCost())) {
+                messages.accept("Not enough gold.");
+                return false;
+            }
+            var hero = state.getHero();
+            hero.setHp(hero.getHp() + state.getHealerHealAmount());
+        }
+        state.closeHealerPrompt();
+        return true;
+    }
+}
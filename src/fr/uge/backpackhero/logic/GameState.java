@@ -3,9 +3,13 @@ package fr.uge.backpackhero.logic;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
 
 import fr.uge.backpackhero.model.entity.Hero;
 import fr.uge.backpackhero.model.item.Backpack;
+import fr.uge.backpackhero.model.item.BackpackHistory;
 import fr.uge.backpackhero.model.item.Item;
 import fr.uge.backpackhero.model.level.Dungeon;
 import fr.uge.backpackhero.model.level.Floor;
@@ -20,12 +24,20 @@ import fr.uge.backpackhero.model.level.Position;
  */
 public class GameState {
 
-    final Dungeon dungeon = new Dungeon();
+    /** The width of the backpack of a standard game. */
+    public static final int DEFAULT_BACKPACK_WIDTH = 7;
+    /** The height of the backpack of a standard game. */
+    public static final int DEFAULT_BACKPACK_HEIGHT = 5;
+
+    final long seed;
+    final RandomGenerator lootRandom;
+    final Dungeon dungeon;
     int floor = 0;
-    Position position = new Position(0, 0);
+    Position position = Position.of(0, 0);
     final Hero hero = new Hero();
-    Backpack backpack = new Backpack(7, 5);
-    CombatEngine combatEngine = new CombatEngine();
+    Backpack backpack;
+    final BackpackHistory backpackHistory;
+    CombatEngine combatEngine;
 
     // Game state
     private State state = State.EXPLORATION;
@@ -63,6 +75,58 @@ public class GameState {
      * Initializes the dungeon, hero, backpack, and combat engine.
      */
     public GameState() {
+        this(DEFAULT_BACKPACK_WIDTH, DEFAULT_BACKPACK_HEIGHT);
+    }
+
+    /**
+     * Creates a new GameState with a backpack of the given size and a random
+     * seed.
+     * 
+     * @param backpackWidth  the width of the backpack in cells
+     * @param backpackHeight the height of the backpack in cells
+     */
+    public GameState(int backpackWidth, int backpackHeight) {
+        this(backpackWidth, backpackHeight, ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * Creates a new GameState with a backpack of the given size, whose random
+     * events all derive from a seed: two games with the same seed and the same
+     * commands play the same way.
+     * The seed is split into independent streams for the dungeon generation,
+     * the enemy intents and the combat loot, so consuming one stream never
+     * shifts the others.
+     * 
+     * @param backpackWidth  the width of the backpack in cells
+     * @param backpackHeight the height of the backpack in cells
+     * @param seed           the seed of the game
+     */
+    public GameState(int backpackWidth, int backpackHeight, long seed) {
+        this.seed = seed;
+        var random = new SplittableRandom(seed);
+        this.dungeon = new Dungeon(random.split());
+        this.combatEngine = new CombatEngine(random.split());
+        this.lootRandom = random.split();
+        this.backpack = new Backpack(backpackWidth, backpackHeight);
+        this.backpackHistory = new BackpackHistory(backpack);
+    }
+
+    /**
+     * Returns the seed all the random events of the game derive from.
+     * 
+     * @return the seed of the game
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Returns the random generator used to roll the loot of combats.
+     * 
+     * @return the loot random generator
+     */
+    public RandomGenerator getLootRandom() {
+        return lootRandom;
     }
 
     /**
@@ -137,7 +201,7 @@ public class GameState {
             return;
         }
         this.floor++;
-        this.position = new Position(0, 0);
+        this.position = Position.of(0, 0);
     }
 
     /**
@@ -149,6 +213,15 @@ public class GameState {
         return backpack;
     }
 
+    /**
+     * Returns the undo/redo history of the edits made to the backpack.
+     * 
+     * @return the backpack history
+     */
+    public BackpackHistory getBackpackHistory() {
+        return backpackHistory;
+    }
+
     /**
      * Returns the combat engine of the game.
      * 
@@ -0,0 +1,99 @@
+package fr.uge.backpackhero.logic;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * Chooses the actions of the hero when a combat is played forward in a
+ * {@link CombatSimulation}.
+ * A policy is called repeatedly during a turn, until it ends the turn or the
+ * hero runs out of energy. Policies may be called from several threads at
+ * once, each with its own simulation and random generator.
+ *
+ */
+@FunctionalInterface
+public interface HeroPolicy {
+
+    /**
+     * Chooses the next item to use this turn; the policy may also change the
+     * target of the weapons.
+     *
+     * @param combat the simulated combat, whose current turn is the hero's
+     * @param random a random generator the policy may use
+     * @return the index of a usable item, or -1 to end the turn
+     */
+    int chooseItem(CombatSimulation combat, RandomGenerator random);
+
+    /**
+     * Returns a policy that uses random affordable items until the energy runs
+     * out.
+     *
+     * @return a random policy
+     */
+    static HeroPolicy randomItems() {
+        return (combat, random) -> {
+            int count = 0;
+            int chosen = -1;
+            for (int i = 0; i < combat.getItemCount(); i++) {
+                // Reservoir sampling among the usable items
+                if (combat.canUseItem(i) && random.nextInt(++count) == 0) {
+                    chosen = i;
+                }
+            }
+            return chosen;
+        };
+    }
+
+    /**
+     * Returns a policy that blocks the incoming damage with the armor giving the
+     * most protection per energy, then attacks the weakest enemy with the weapon
+     * dealing the most damage per energy.
+     *
+     * @return a greedy policy
+     */
+    static HeroPolicy greedy() {
+        return (combat, random) -> {
+            boolean defend = combat.getIncomingDamage() > combat.getHeroBlock();
+            int best = -1;
+            int bestValue = 0;
+            int bestCost = 1;
+            for (int i = 0; i < combat.getItemCount(); i++) {
+                if (!combat.canUseItem(i)) {
+                    continue;
+                }
+                int value = defend ? combat.getItemProtection(i) : combat.getItemDamage(i);
+                int cost = Math.max(1, combat.getItemEnergyCost(i));
+                // Compares value / cost without dividing
+                if (value * bestCost > bestValue * cost) {
+                    best = i;
+                    bestValue = value;
+                    bestCost = cost;
+                }
+            }
+            if (best < 0 && defend) {
+                // Nothing protects, attack anyway
+                for (int i = 0; i < combat.getItemCount(); i++) {
+                    if (combat.canUseItem(i) && combat.isWeapon(i)) {
+                        best = i;
+                        break;
+                    }
+                }
+            }
+            if (best >= 0 && combat.isWeapon(best)) {
+                combat.setTarget(weakestEnemy(combat));
+            }
+            return best;
+        };
+    }
+
+    private static int weakestEnemy(CombatSimulation combat) {
+        int weakest = -1;
+        for (int i = 0; i < combat.getEnemyCount(); i++) {
+            if (combat.isEnemyAlive(i) && (weakest < 0
+                    || combat.getEnemyHp(i) + combat.getEnemyBlock(i) < combat.getEnemyHp(weakest)
+                            + combat.getEnemyBlock(weakest))) {
+                weakest = i;
+            }
+        }
+        return weakest;
+    }
+}
@@ -0,0 +1,418 @@
+package fr.uge.backpackhero.logic;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.ToIntFunction;
+
+import fr.uge.backpackhero.model.item.Backpack;
+import fr.uge.backpackhero.model.item.CellMask;
+import fr.uge.backpackhero.model.item.Item;
+import fr.uge.backpackhero.model.item.Placement;
+import fr.uge.backpackhero.model.item.Shape;
+import fr.uge.backpackhero.model.level.Position;
+
+/**
+ * Finds the set of loot items to put in the backpack, with their anchor and
+ * rotation, that maximizes the total value of the items taken.
+ * <p>
+ * Like an exact cover search, every way of putting an item in the free cells
+ * (orientation and anchor) is precomputed as a row of cells. The search then
+ * goes through the free cells in row-major order: the first cell still open is
+ * either covered by a row whose first cell it is, or left empty for good.
+ * Unlike an exact cover, items may be left out and cells may stay empty.
+ * Branches are pruned with a bound that fills the open cells with the best
+ * value per cell, so the cells left empty tighten the bound as soon as they are
+ * given up, and identical items are grouped so they are never tried in two
+ * orders. The search stops when its time budget is spent and then returns the
+ * best packing found so far.
+ * <p>
+ * The tree is walked by a {@link PlacementSearch}, on the calling thread or,
+ * given a {@link ForkJoinPool}, in parallel on the pool.
+ *
+ */
+public final class LootPacker {
+
+    /** Default time budget, short enough to answer a key press on the loot screen. */
+    private static final Duration DEFAULT_TIME_BUDGET = Duration.ofMillis(100);
+
+    private final ToIntFunction<? super Item> valueFunction;
+    private final PlacementSearch search;
+
+    /**
+     * The outcome of a packing search.
+     *
+     * @param placements the placements of the items to take
+     * @param value      the total value of the items taken
+     * @param optimal    true if the search completed, false if it ran out of time
+     *                   and returned the best packing found so far
+     */
+    public record Result(List<Placement> placements, int value, boolean optimal) {
+
+        /**
+         * Creates a new Result.
+         *
+         * @param placements the placements of the items to take
+         * @param value      the total value of the items taken
+         * @param optimal    true if the search completed
+         */
+        public Result {
+            placements = List.copyOf(placements);
+        }
+    }
+
+    /**
+     * Creates a new LootPacker.
+     *
+     * @param valueFunction the value of an item, items worth 0 or less are never
+     *                      taken
+     * @param timeBudget    the maximum time spent in one search
+     */
+    public LootPacker(ToIntFunction<? super Item> valueFunction, Duration timeBudget) {
+        this(valueFunction, timeBudget, null);
+    }
+
+    /**
+     * Creates a new LootPacker whose searches run in parallel on a fork/join
+     * pool.
+     *
+     * @param valueFunction the value of an item, items worth 0 or less are never
+     *                      taken
+     * @param timeBudget    the maximum time spent in one search
+     * @param pool          the pool running the search, or null to search on the
+     *                      calling thread
+     */
+    public LootPacker(ToIntFunction<? super Item> valueFunction, Duration timeBudget, ForkJoinPool pool) {
+        this.valueFunction = Objects.requireNonNull(valueFunction, "valueFunction cannot be null");
+        this.search = new PlacementSearch(timeBudget, pool);
+    }
+
+    /**
+     * Creates a new LootPacker that maximizes the total price of the items taken,
+     * searching on the common pool.
+     */
+    public LootPacker() {
+        this(Item::getPrice, DEFAULT_TIME_BUDGET, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Searches the best way to put some of the candidate items in the free cells
+     * of the backpack. The backpack is not modified.
+     *
+     * @param backpack   the backpack to fill
+     * @param candidates the items that can be taken
+     * @return the best packing found
+     */
+    public Result solve(Backpack backpack, List<? extends Item> candidates) {
+        Objects.requireNonNull(backpack, "backpack cannot be null");
+        Objects.requireNonNull(candidates, "candidates cannot be null");
+        var outcome = search.search(new PackNode(packKinds(candidates, backpack), backpack));
+        return new Result(outcome.solution(), outcome.value(), outcome.complete());
+    }
+
+    /**
+     * Groups the candidates worth taking into kinds of identical items, best
+     * value per cell first so that the bound fills the open cells in order.
+     */
+    private PackKind[] packKinds(List<? extends Item> candidates, Backpack backpack) {
+        var kinds = new ArrayList<PackKind>();
+        for (var item : candidates) {
+            Objects.requireNonNull(item, "candidates cannot contain null");
+            int value = valueFunction.applyAsInt(item);
+            if (value <= 0) {
+                continue;
+            }
+            var shape = item.getShape();
+            // Rows are computed from orientation 0 so that identical items get the same rows
+            var base = shape.rotate(-shape.getOrientation());
+            var kind = kinds.stream().filter(k -> k.base == base && k.value == value).findFirst();
+            if (kind.isPresent()) {
+                kind.get().items.add(item);
+            } else {
+                kinds.add(new PackKind(item, base, value, backpack));
+            }
+        }
+        kinds.sort(Comparator.<PackKind>comparingLong(k -> -(long) k.value * 1_000_000 / k.area)
+                .thenComparingInt(k -> -k.value));
+        return kinds.toArray(PackKind[]::new);
+    }
+
+    /**
+     * Identical candidate items, with every row (orientation and anchor) they
+     * can take in the free cells of the backpack, indexed by the first cell of
+     * the row in row-major order.
+     */
+    private static final class PackKind {
+        private final ArrayList<Item> items = new ArrayList<>();
+        private final Shape base; // orientation 0 of the items' shape table
+        private final int value;
+        private final int area;
+        private final int[] anchors; // cell index of the anchor of each row
+        private final Shape[] shapes; // orientation of each row
+        private final int[][] rowsAt; // rows whose first cell is each cell
+
+        private PackKind(Item item, Shape base, int value, Backpack backpack) {
+            items.add(item);
+            this.base = base;
+            this.value = value;
+            this.area = base.getCellCount();
+            int width = backpack.getWidth();
+            var legal = backpack.legalPlacements(base);
+            this.anchors = new int[legal.length];
+            this.shapes = new Shape[legal.length];
+            var counts = new int[width * backpack.getHeight()];
+            var firstCells = new int[legal.length];
+            for (int i = 0; i < legal.length; i++) {
+                anchors[i] = legal[i] >>> 2;
+                shapes[i] = base.rotate(legal[i] & 3);
+                firstCells[i] = anchors[i] + Long.numberOfTrailingZeros(shapes[i].getRowMask(0));
+                counts[firstCells[i]]++;
+            }
+            this.rowsAt = new int[counts.length][];
+            for (int cell = 0; cell < counts.length; cell++) {
+                rowsAt[cell] = new int[counts[cell]];
+                counts[cell] = 0;
+            }
+            for (int i = 0; i < legal.length; i++) {
+                rowsAt[firstCells[i]][counts[firstCells[i]]++] = i;
+            }
+        }
+
+        private Placement toPlacement(Item item, int row, int width) {
+            var anchor = Position.of(anchors[row] % width, anchors[row] / width);
+            int rotation = (shapes[row].getOrientation() - item.getShape().getOrientation()) & 3;
+            return new Placement(item, anchor, rotation);
+        }
+    }
+
+    /**
+     * A node of the packing search: the cells still open, the items left and
+     * the rows chosen so far. Each level closes the first open cell, by covering
+     * it with a row or by leaving it empty.
+     */
+    private static final class PackNode implements PlacementSearch.Node<PackNode, List<Placement>> {
+        private static final int EMPTY = -1;
+
+        private final PackKind[] kinds;
+        private final int width;
+        private final CellMask open; // free cells neither covered nor left empty
+        private final CellMask anchors; // anchors of the backpack items and of the rows chosen so far
+        private final int[] left; // items left of each kind
+        private int value;
+        private int openArea;
+        private int depth;
+        // One entry per level: the cell closed, and the kind and row covering it or EMPTY
+        private final int[] targets;
+        private final int[] chosenKinds;
+        private final int[] chosenRows;
+        // The branches of each level: a kind and a row, the last branch leaving the cell empty
+        private final int[][] branchKinds;
+        private final int[][] branchRows;
+        private final int[] branchCounts;
+
+        private PackNode(PackKind[] kinds, Backpack backpack) {
+            this.kinds = kinds;
+            this.width = backpack.getWidth();
+            this.open = backpack.getFreeCells();
+            this.anchors = backpack.getAnchorCells();
+            this.left = new int[kinds.length];
+            for (int k = 0; k < kinds.length; k++) {
+                left[k] = kinds[k].items.size();
+            }
+            this.openArea = open.cardinality();
+            // Each level closes at least one cell
+            int levels = openArea + 1;
+            this.targets = new int[levels];
+            this.chosenKinds = new int[levels];
+            this.chosenRows = new int[levels];
+            this.branchKinds = new int[levels][];
+            this.branchRows = new int[levels][];
+            this.branchCounts = new int[levels];
+        }
+
+        private PackNode(PackNode other) {
+            this.kinds = other.kinds;
+            this.width = other.width;
+            this.open = other.open.copy();
+            this.anchors = other.anchors.copy();
+            this.left = other.left.clone();
+            this.value = other.value;
+            this.openArea = other.openArea;
+            this.depth = other.depth;
+            this.targets = other.targets.clone();
+            this.chosenKinds = other.chosenKinds.clone();
+            this.chosenRows = other.chosenRows.clone();
+            this.branchKinds = new int[other.branchKinds.length][];
+            this.branchRows = new int[other.branchRows.length][];
+            // Only the branches of this level are read before the copy computes its own
+            branchKinds[depth] = other.branchKinds[depth];
+            branchRows[depth] = other.branchRows[depth];
+            this.branchCounts = other.branchCounts.clone();
+        }
+
+        @Override
+        public int value() {
+            return value;
+        }
+
+        /**
+         * The value so far plus the open cells filled with the best value per
+         * cell, the last item being cut to fit.
+         */
+        @Override
+        public int bound() {
+            int bound = value;
+            int area = openArea;
+            for (int k = 0; k < kinds.length && area > 0; k++) {
+                var kind = kinds[k];
+                if (left[k] == 0 || kind.anchors.length == 0) {
+                    continue;
+                }
+                int taken = Math.min(left[k], area / kind.area);
+                bound += taken * kind.value;
+                area -= taken * kind.area;
+                if (taken < left[k] && area > 0) {
+                    bound += (kind.value * area + kind.area - 1) / kind.area;
+                    area = 0;
+                }
+            }
+            return bound;
+        }
+
+        @Override
+        public int branches() {
+            int target = open.nextSetBit(depth == 0 ? 0 : targets[depth - 1]);
+            if (target < 0 || !anyLeft()) {
+                branchCounts[depth] = 0;
+                return 0;
+            }
+            targets[depth] = target;
+            int count = 0;
+            var rowKinds = branchKinds[depth];
+            var rows = branchRows[depth];
+            for (int k = 0; k < kinds.length; k++) {
+                if (left[k] == 0) {
+                    continue;
+                }
+                var kind = kinds[k];
+                for (int row : kind.rowsAt[target]) {
+                    if (anchors.get(kind.anchors[row]) || !fits(kind.shapes[row], kind.anchors[row])) {
+                        continue;
+                    }
+                    if (rowKinds == null || count == rowKinds.length) {
+                        int size = rowKinds == null ? 8 : count * 2;
+                        rowKinds = rowKinds == null ? new int[size] : Arrays.copyOf(rowKinds, size);
+                        rows = rows == null ? new int[size] : Arrays.copyOf(rows, size);
+                        branchKinds[depth] = rowKinds;
+                        branchRows[depth] = rows;
+                    }
+                    rowKinds[count] = k;
+                    rows[count] = row;
+                    count++;
+                }
+            }
+            branchCounts[depth] = count;
+            return count + 1;
+        }
+
+        private boolean anyLeft() {
+            for (int count : left) {
+                if (count != 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Checks if every cell of a shape anchored at the given cell index is
+         * open.
+         */
+        private boolean fits(Shape shape, int anchor) {
+            for (int row = 0; row < shape.getHeight(); row++) {
+                long mask = shape.getRowMask(row);
+                if ((open.window(anchor + row * width, shape.getWidth()) & mask) != mask) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public boolean enter(int branch) {
+            int target = targets[depth];
+            if (branch == branchCounts[depth]) {
+                open.clear(target);
+                openArea--;
+                chosenRows[depth] = EMPTY;
+            } else {
+                int k = branchKinds[depth][branch];
+                int row = branchRows[depth][branch];
+                cover(kinds[k], row, true);
+                left[k]--;
+                value += kinds[k].value;
+                chosenKinds[depth] = k;
+                chosenRows[depth] = row;
+            }
+            depth++;
+            return true;
+        }
+
+        @Override
+        public void leave(int branch) {
+            depth--;
+            int row = chosenRows[depth];
+            if (row == EMPTY) {
+                open.set(targets[depth]);
+                openArea++;
+            } else {
+                int k = chosenKinds[depth];
+                cover(kinds[k], row, false);
+                left[k]++;
+                value -= kinds[k].value;
+            }
+        }
+
+        private void cover(PackKind kind, int row, boolean covered) {
+            var shape = kind.shapes[row];
+            int anchor = kind.anchors[row];
+            if (covered) {
+                anchors.set(anchor);
+                openArea -= kind.area;
+            } else {
+                anchors.clear(anchor);
+                openArea += kind.area;
+            }
+            for (int r = 0; r < shape.getHeight(); r++) {
+                if (covered) {
+                    open.andNotWindow(anchor + r * width, shape.getRowMask(r));
+                } else {
+                    open.orWindow(anchor + r * width, shape.getRowMask(r));
+                }
+            }
+        }
+
+        @Override
+        public PackNode copy() {
+            return new PackNode(this);
+        }
+
+        @Override
+        public List<Placement> solution() {
+            var placements = new ArrayList<Placement>();
+            var used = new int[kinds.length];
+            for (int level = 0; level < depth; level++) {
+                if (chosenRows[level] != EMPTY) {
+                    var kind = kinds[chosenKinds[level]];
+                    var item = kind.items.get(used[chosenKinds[level]]++);
+                    placements.add(kind.toPlacement(item, chosenRows[level], width));
+                }
+            }
+            return placements;
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package fr.uge.backpackhero.logic;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import fr.uge.backpackhero.model.entity.Enemy;
+import fr.uge.backpackhero.model.entity.EnemyTemplate;
+import fr.uge.backpackhero.model.entity.Hero;
+import fr.uge.backpackhero.model.item.Armor;
+import fr.uge.backpackhero.model.item.Item;
+import fr.uge.backpackhero.model.item.Weapon;
+import fr.uge.backpackhero.model.level.Dungeon;
+
+/**
+ * Remembers the simulated outcome of combats, for balance runs that play the
+ * same enemies against the same loadout again and again.
+ * A combat is known by its signature: the {@link Encounter}, the
+ * {@link Loadout} and the health points and energy of the hero. Two
+ * combats with the same signature have the same outcome, so only the first
+ * one is simulated, by a {@link BatchCombatSimulator}; the next ones are read
+ * from the cache without simulating anything.
+ * <p>
+ * The cache keeps a bounded number of outcomes and forgets the least recently
+ * used one when it is full. It is not thread safe.
+ *
+ */
+public final class OutcomeCache {
+
+    /** Default number of outcomes kept. */
+    private static final int DEFAULT_CAPACITY = 1024;
+    /** Default number of combats simulated for an outcome. */
+    private static final int DEFAULT_SAMPLES = 1000;
+    /** Default number of rounds after which a combat counts as lost. */
+    private static final int DEFAULT_MAX_TURNS = 100;
+    /** Increment between the seeds of the combats of an outcome. */
+    private static final long GAMMA = 0x9e3779b97f4a7c15L;
+
+    /** Orders items as the hero uses them: weapons first, the strongest first. */
+    private static final Comparator<ItemStats> ITEM_ORDER = Comparator.comparing(ItemStats::weapon).reversed()
+            .thenComparing(Comparator.comparingInt(ItemStats::power).reversed())
+            .thenComparingInt(ItemStats::energyCost)
+            .thenComparingInt(ItemStats::manaCost);
+
+    private final int samples;
+    private final int maxTurns;
+    private final long seed;
+    private final LinkedHashMap<Key, Outcome> outcomes;
+    private long hits;
+    private long misses;
+
+    /**
+     * The stats of an enemy at the start of a combat: its kind, and what may
+     * differ from a new enemy of this kind.
+     *
+     * @param template the kind of the enemy, equal for the same stats whether
+     *                 it is registered or not
+     * @param hp       the health points of the enemy
+     * @param block    the block of the enemy
+     * @param attack   the attack of the enemy
+     * @param defense  the defense of the enemy
+     */
+    public record EnemyStats(EnemyTemplate template, int hp, int block, int attack, int defense) {
+
+        /**
+         * Reads the stats of an enemy.
+         *
+         * @param enemy the enemy
+         * @return the current stats of the enemy
+         */
+        public static EnemyStats of(Enemy enemy) {
+            Objects.requireNonNull(enemy, "enemy cannot be null");
+            return new EnemyStats(enemy.getTemplate(), enemy.getHp(), enemy.getBlock(), enemy.getAttack(),
+                    enemy.getDefense());
+        }
+    }
+
+    /**
+     * The signature of an encounter: the floor and the stats of its enemies.
+     * The enemies keep their order, as the hero hits the first alive one.
+     *
+     * @param floor   the index of the floor of the encounter
+     * @param enemies the stats of the enemies, in order
+     */
+    public record Encounter(int floor, List<EnemyStats> enemies) {
+
+        /**
+         * Creates a new Encounter.
+         *
+         * @param floor   the index of the floor of the encounter
+         * @param enemies the stats of the enemies, in order
+         */
+        public Encounter {
+            if (floor < 0) {
+                throw new IllegalArgumentException("floor cannot be negative");
+            }
+            enemies = List.copyOf(enemies);
+            if (enemies.isEmpty()) {
+                throw new IllegalArgumentException("an encounter needs at least one enemy");
+            }
+        }
+
+        /**
+         * Reads the signature of enemies met on a floor.
+         *
+         * @param floor   the index of the floor of the encounter
+         * @param enemies the enemies, in order
+         * @return the signature of the encounter
+         */
+        public static Encounter of(int floor, List<Enemy> enemies) {
+            Objects.requireNonNull(enemies, "enemies cannot be null");
+            return new Encounter(floor, enemies.stream().map(EnemyStats::of).toList());
+        }
+    }
+
+    /**
+     * The stats of a weapon or an armor, what a combat needs to know of it.
+     *
+     * @param weapon     true for a weapon, false for an armor
+     * @param power      the damage of a weapon or the protection of an armor
+     * @param energyCost the energy cost of the item
+     * @param manaCost   the mana cost of the item
+     */
+    public record ItemStats(boolean weapon, int power, int energyCost, int manaCost) {
+    }
+
+    /**
+     * The signature of a loadout: the stats of its weapons and armors, sorted,
+     * so that the same items in another order or another place of the backpack
+     * have the same signature. The other items play no part in a combat and are
+     * left out.
+     *
+     * @param items the stats of the items, sorted
+     */
+    public record Loadout(List<ItemStats> items) {
+
+        /**
+         * Creates a new Loadout.
+         *
+         * @param items the stats of the items, in any order
+         */
+        public Loadout {
+            var sorted = new ArrayList<>(items);
+            sorted.sort(ITEM_ORDER);
+            items = List.copyOf(sorted);
+        }
+
+        /**
+         * Reads the signature of items.
+         *
+         * @param loadout the items of the hero
+         * @return the signature of the weapons and armors
+         */
+        public static Loadout of(List<? extends Item> loadout) {
+            Objects.requireNonNull(loadout, "loadout cannot be null");
+            var items = new ArrayList<ItemStats>();
+            for (var item : loadout) {
+                var stats = stats(item);
+                if (stats != null) {
+                    items.add(stats);
+                }
+            }
+            return new Loadout(items);
+        }
+    }
+
+    /**
+     * The outcome of the combats of a signature.
+     *
+     * @param combats       the number of combats simulated
+     * @param winRate       the fraction of the combats won by the hero
+     * @param averageHpLost the average health points lost by the hero
+     * @param averageTurns  the average number of rounds of a combat
+     */
+    public record Outcome(int combats, double winRate, double averageHpLost, double averageTurns) {
+    }
+
+    private record Key(Encounter encounter, Loadout loadout, int heroHp, int heroMaxEnergy) {
+    }
+
+    /**
+     * Creates a new OutcomeCache.
+     *
+     * @param capacity the number of outcomes kept
+     * @param samples  the number of combats simulated for an outcome
+     * @param maxTurns the number of rounds after which a combat counts as lost
+     * @param seed     the seed of the enemy intents of the simulated combats
+     */
+    public OutcomeCache(int capacity, int samples, int maxTurns, long seed) {
+        if (capacity <= 0 || samples <= 0 || maxTurns <= 0) {
+            throw new IllegalArgumentException("capacity, samples and maxTurns must be positive");
+        }
+        this.samples = samples;
+        this.maxTurns = maxTurns;
+        this.seed = seed;
+        this.outcomes = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Outcome> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Creates a new OutcomeCache keeping 1024 outcomes of 1000 combats each.
+     */
+    public OutcomeCache() {
+        this(DEFAULT_CAPACITY, DEFAULT_SAMPLES, DEFAULT_MAX_TURNS, 0);
+    }
+
+    /**
+     * Returns the outcome of a hero with a loadout against the enemies of a
+     * room of a floor, as given by {@link Dungeon#enemiesForFloor(int, int)}.
+     *
+     * @param floor      the index of the floor
+     * @param enemyCount the number of enemies of the room
+     * @param hero       the hero, at the start of the combat
+     * @param loadout    the items of the hero
+     * @return the outcome of the combat
+     */
+    public Outcome outcome(int floor, int enemyCount, Hero hero, List<? extends Item> loadout) {
+        return outcome(floor, Dungeon.enemiesForFloor(floor, enemyCount), hero, loadout);
+    }
+
+    /**
+     * Returns the outcome of a hero with a loadout against enemies, simulating
+     * it only if its signature is not in the cache.
+     * The hero uses its weapons and armors in the order of the signature of the
+     * loadout, with the policy of {@link BatchCombatSimulator}. The hero and the
+     * enemies are not modified.
+     *
+     * @param floor   the index of the floor of the encounter
+     * @param enemies the enemies, at the start of the combat
+     * @param hero    the hero, at the start of the combat
+     * @param loadout the items of the hero
+     * @return the outcome of the combat
+     */
+    public Outcome outcome(int floor, List<Enemy> enemies, Hero hero, List<? extends Item> loadout) {
+        Objects.requireNonNull(hero, "hero cannot be null");
+        var key = new Key(Encounter.of(floor, enemies), Loadout.of(loadout), hero.getHp(), hero.getMaxEnergy());
+        var outcome = outcomes.get(key);
+        if (outcome != null) {
+            hits++;
+            return outcome;
+        }
+        misses++;
+        outcome = simulate(enemies, hero, loadout);
+        outcomes.put(key, outcome);
+        return outcome;
+    }
+
+    /**
+     * Plays the combats of a signature, with the items in the order of the
+     * signature so that the outcome only depends on it.
+     */
+    private Outcome simulate(List<Enemy> enemies, Hero hero, List<? extends Item> loadout) {
+        var items = new ArrayList<Item>();
+        for (var item : loadout) {
+            if (stats(item) != null) {
+                items.add(item);
+            }
+        }
+        items.sort(Comparator.comparing(OutcomeCache::stats, ITEM_ORDER));
+        var simulator = new BatchCombatSimulator(samples, enemies.size(), items.size());
+        for (int i = 0; i < samples; i++) {
+            simulator.add(hero, enemies, items, seed + i * GAMMA);
+        }
+        simulator.run(maxTurns);
+        int wins = 0;
+        long hpLost = 0;
+        long turns = 0;
+        for (int i = 0; i < samples; i++) {
+            if (simulator.isWon(i)) {
+                wins++;
+            }
+            hpLost += hero.getHp() - simulator.getHeroHp(i);
+            turns += simulator.getTurns(i);
+        }
+        return new Outcome(samples, (double) wins / samples, (double) hpLost / samples, (double) turns / samples);
+    }
+
+    private static ItemStats stats(Item item) {
+        return switch (item) {
+            case Weapon weapon -> new ItemStats(true, weapon.getDamage(), weapon.getEnergyCost(), weapon.getManaCost());
+            case Armor armor -> new ItemStats(false, armor.getProtection(), armor.getEnergyCost(), armor.getManaCost());
+            default -> null;
+        };
+    }
+
+    /**
+     * Returns the number of outcomes read from the cache.
+     *
+     * @return the number of hits
+     */
+    public long hits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of outcomes that had to be simulated.
+     *
+     * @return the number of misses
+     */
+    public long misses() {
+        return misses;
+    }
+
+    /**
+     * Returns the fraction of the outcomes read from the cache.
+     *
+     * @return the hit rate, 0 if no outcome was asked
+     */
+    public double hitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * Returns the number of outcomes kept.
+     *
+     * @return the size of the cache
+     */
+    public int size() {
+        return outcomes.size();
+    }
+
+    /**
+     * Forgets all the outcomes and resets the hits and misses.
+     */
+    public void clear() {
+        outcomes.clear();
+        hits = 0;
+        misses = 0;
+    }
+}
@@ -0,0 +1,306 @@
+package fr.uge.backpackhero.logic;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs a depth first branch and bound search over placements of items in a
+ * backpack, such as the loot packing of {@link LootPacker} or the
+ * arrangements of {@link BackpackArranger}.
+ * <p>
+ * The search itself is described by a {@link Node}: the state of a partial
+ * placement, that can take and undo its branches (an item in an orientation at
+ * an anchor, a cell left empty...), and that knows its value and a bound of the
+ * value below it. The driver walks the tree, keeps the best solution, prunes
+ * the nodes whose bound cannot beat it and stops when its time budget is spent
+ * or when a solution reaches the bound of the root.
+ * <p>
+ * Given a {@link ForkJoinPool}, the branches of the first levels of the tree
+ * become tasks, each working on its own copy of the node, that the pool spreads
+ * over its threads; work stealing balances subtrees of very different sizes,
+ * and the value of the best solution is shared through an atomic so every
+ * thread prunes with it. Without a pool, the search runs on the calling thread
+ * and never copies a node.
+ *
+ */
+public final class PlacementSearch {
+
+    /** Value of a node that is not a solution. */
+    public static final int NO_VALUE = Integer.MIN_VALUE;
+
+    /** Default number of levels of the tree whose branches are forked as tasks. */
+    private static final int DEFAULT_SPLIT_DEPTH = 2;
+    /** Number of nodes between two checks of the clock. */
+    private static final int CLOCK_CHECK_INTERVAL = 64;
+
+    private final long timeBudgetNanos;
+    private final ForkJoinPool pool; // null for a search on the calling thread
+    private final int splitDepth;
+
+    /**
+     * A node of the search tree, changed in place as the search takes and undoes
+     * branches.
+     *
+     * @param <N> the type of the node
+     * @param <S> the type of a solution
+     */
+    public interface Node<N extends Node<N, S>, S> {
+
+        /**
+         * Returns the value of the node as a solution.
+         *
+         * @return the value, or {@link PlacementSearch#NO_VALUE} if the node is
+         *         not a solution
+         */
+        int value();
+
+        /**
+         * Returns an upper bound of the value of this node and of every node
+         * below it.
+         *
+         * @return the bound
+         */
+        int bound();
+
+        /**
+         * Computes the branches of the node. It is called once each time the
+         * search reaches the node, before any call to {@link #enter(int)}.
+         *
+         * @return the number of branches, 0 for a leaf
+         */
+        int branches();
+
+        /**
+         * Takes a branch of the node, making this node its child.
+         *
+         * @param branch the index of the branch
+         * @return true if the branch was taken, false if it is not legal and the
+         *         node is unchanged
+         */
+        boolean enter(int branch);
+
+        /**
+         * Undoes a branch taken by {@link #enter(int)}, making this node its
+         * parent again.
+         *
+         * @param branch the index of the branch
+         */
+        void leave(int branch);
+
+        /**
+         * Returns an independent copy of the node, branches included. It may be
+         * called by several threads at once, and must not change the node.
+         *
+         * @return a copy of the node
+         */
+        N copy();
+
+        /**
+         * Returns the solution of the node, independent of the node.
+         *
+         * @return the solution
+         */
+        S solution();
+    }
+
+    /**
+     * The outcome of a search.
+     *
+     * @param <S>      the type of a solution
+     * @param solution the best solution found, null if no node was a solution
+     * @param value    the value of the best solution, {@link #NO_VALUE} if there
+     *                 is none
+     * @param complete true if the search went through the whole tree, false if
+     *                 it ran out of time
+     * @param nodes    the number of nodes visited
+     */
+    public record Outcome<S>(S solution, int value, boolean complete, long nodes) {
+    }
+
+    /**
+     * Creates a new PlacementSearch.
+     *
+     * @param timeBudget the maximum time spent in one search
+     * @param pool       the pool running the searches, or null to search on the
+     *                   calling thread
+     * @param splitDepth the number of levels of the tree whose branches are
+     *                   forked as tasks on the pool
+     */
+    public PlacementSearch(Duration timeBudget, ForkJoinPool pool, int splitDepth) {
+        Objects.requireNonNull(timeBudget, "timeBudget cannot be null");
+        if (timeBudget.isNegative() || timeBudget.isZero()) {
+            throw new IllegalArgumentException("timeBudget must be positive");
+        }
+        if (splitDepth < 0) {
+            throw new IllegalArgumentException("splitDepth cannot be negative");
+        }
+        this.timeBudgetNanos = timeBudget.toNanos();
+        this.pool = pool;
+        this.splitDepth = splitDepth;
+    }
+
+    /**
+     * Creates a new PlacementSearch forking the branches of the first two
+     * levels of the tree.
+     *
+     * @param timeBudget the maximum time spent in one search
+     * @param pool       the pool running the searches, or null to search on the
+     *                   calling thread
+     */
+    public PlacementSearch(Duration timeBudget, ForkJoinPool pool) {
+        this(timeBudget, pool, DEFAULT_SPLIT_DEPTH);
+    }
+
+    /**
+     * Searches the tree below a node for the solution of highest value. The node
+     * is walked in place and is back to its state when the search returns.
+     *
+     * @param <N>  the type of the node
+     * @param <S>  the type of a solution
+     * @param root the root of the tree
+     * @return the best solution found
+     */
+    public <N extends Node<N, S>, S> Outcome<S> search(N root) {
+        Objects.requireNonNull(root, "root cannot be null");
+        var run = new Run<S>(root.bound(), System.nanoTime() + timeBudgetNanos);
+        if (pool == null) {
+            var walker = new Walker<S>(run, 0);
+            walker.explore(root, 0);
+            walker.finish();
+        } else {
+            pool.invoke(new Explore<>(run, splitDepth, root, -1, 0));
+        }
+        return new Outcome<>(run.solution, run.value.get(), !run.aborted, run.nodes.sum());
+    }
+
+    /**
+     * The state shared by all the walkers of one search.
+     */
+    private static final class Run<S> {
+        private final AtomicInteger value = new AtomicInteger(NO_VALUE);
+        private final LongAdder nodes = new LongAdder();
+        private final int rootBound;
+        private final long deadline;
+        private volatile boolean aborted;
+        private S solution;
+
+        private Run(int rootBound, long deadline) {
+            this.rootBound = rootBound;
+            this.deadline = deadline;
+        }
+
+        private boolean isComplete() {
+            return value.get() >= rootBound;
+        }
+
+        /**
+         * Records the solution of a node if it is better than the current one.
+         */
+        private void offer(Node<?, ? extends S> node) {
+            int candidate = node.value();
+            if (candidate == NO_VALUE || candidate <= value.get()) {
+                return;
+            }
+            synchronized (this) {
+                if (candidate <= value.get()) {
+                    return;
+                }
+                solution = node.solution();
+                value.set(candidate);
+            }
+        }
+    }
+
+    /**
+     * A depth first walk of one thread, forking the branches of the nodes above
+     * the split depth.
+     */
+    private static final class Walker<S> {
+        private final Run<S> run;
+        private final int splitDepth;
+        private long nodes;
+
+        private Walker(Run<S> run, int splitDepth) {
+            this.run = run;
+            this.splitDepth = splitDepth;
+        }
+
+        private <N extends Node<N, S>> void explore(N node, int depth) {
+            // The first node of a walker checks the clock too, as a forked subtree may be small
+            if (nodes++ % CLOCK_CHECK_INTERVAL == 0 && System.nanoTime() > run.deadline) {
+                run.aborted = true;
+            }
+            if (run.aborted) {
+                return;
+            }
+            run.offer(node);
+            if (run.isComplete() || node.bound() <= run.value.get()) {
+                return;
+            }
+            int branches = node.branches();
+            if (depth < splitDepth) {
+                var tasks = new ArrayList<Explore<N, S>>(branches);
+                for (int branch = 0; branch < branches; branch++) {
+                    tasks.add(new Explore<>(run, splitDepth, node, branch, depth + 1));
+                }
+                ForkJoinTask.invokeAll(tasks);
+                return;
+            }
+            for (int branch = 0; branch < branches; branch++) {
+                if (node.enter(branch)) {
+                    explore(node, depth + 1);
+                    node.leave(branch);
+                    if (run.aborted || run.isComplete()) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        private void finish() {
+            run.nodes.add(nodes);
+        }
+    }
+
+    /**
+     * A subtree of the search run by the fork/join pool: a branch of a node,
+     * taken on a copy of the node made by the thread that runs the task.
+     */
+    private static final class Explore<N extends Node<N, S>, S> extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final transient Run<S> run;
+        private final int splitDepth;
+        private final transient N parent;
+        private final int branch; // -1 for the root itself
+        private final int depth;
+
+        private Explore(Run<S> run, int splitDepth, N parent, int branch, int depth) {
+            this.run = run;
+            this.splitDepth = splitDepth;
+            this.parent = parent;
+            this.branch = branch;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            if (run.aborted || run.isComplete()) {
+                return;
+            }
+            var node = branch < 0 ? parent : parent.copy();
+            if (branch >= 0 && !node.enter(branch)) {
+                return;
+            }
+            var walker = new Walker<S>(run, splitDepth);
+            walker.explore(node, depth);
+            walker.finish();
+        }
+    }
+}
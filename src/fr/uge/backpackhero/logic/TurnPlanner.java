@@ -0,0 +1,331 @@
+package fr.uge.backpackhero.logic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.random.RandomGenerator;
+
+/**
+ * Plans the turn of the hero: which weapons and armors to use, and which
+ * enemy each weapon hits, to deal the most damage and prevent the most damage
+ * with the energy of the hero. Mana is not spent: an item can be used when
+ * its mana cost is at most the mana of the hero, so the other items are left
+ * out of the plan.
+ * <p>
+ * The intents of the enemies are known for this turn, so the planner knows
+ * the damage coming at the end of the turn. A plan is worth the health points
+ * it removes from the enemies, plus the damage it prevents: the attacks of the
+ * enemies it kills and the damage absorbed by the block of its armors. The
+ * block the hero already has absorbs the first points of the incoming damage,
+ * so killing an enemy or adding block only prevents what it would not absorb.
+ * <p>
+ * Two damages on the same enemy add up, its block absorbing the first points,
+ * so only the total damage on each enemy and the total protection matter.
+ * The planner uses bounded dynamic programming instead of trying every
+ * sequence of items:
+ * <ul>
+ * <li>two unbounded knapsacks, indexed by energy, give the most damage and the
+ * most protection reachable with each budget, items being usable as many
+ * times as the energy allows, like in {@link CombatEngine};</li>
+ * <li>a second program goes through the enemies, splitting the energy between
+ * them, over the states (energy left, attack of the killed enemies), then
+ * spends what is left on armors.</li>
+ * </ul>
+ * The planner is also a {@link HeroPolicy} that plans the turn each time it
+ * is asked for an item and plays the first step of the plan.
+ *
+ */
+public final class TurnPlanner implements HeroPolicy {
+
+    private static final int NONE = -1;
+    private static final int LESS_ENERGY = -2;
+    private static final int UNREACHABLE = Integer.MIN_VALUE;
+
+    /**
+     * One use of an item in a plan.
+     *
+     * @param item   the index of the item in the simulation
+     * @param target the index of the enemy hit by a weapon, -1 for an armor
+     */
+    public record Step(int item, int target) {
+    }
+
+    /**
+     * The best turn found by the planner.
+     *
+     * @param steps           the items to use, weapons first then armors
+     * @param damageDealt     the health points removed from the enemies
+     * @param damagePrevented the damage the hero will not take at the end of the
+     *                        turn, thanks to kills and block
+     * @param energyUsed      the energy spent by the plan
+     * @param manaNeeded      the mana the hero needs for the plan, the highest
+     *                        mana cost of its items
+     */
+    public record TurnPlan(List<Step> steps, int damageDealt, int damagePrevented, int energyUsed, int manaNeeded) {
+
+        /**
+         * Creates a new TurnPlan.
+         *
+         * @param steps           the items to use, weapons first then armors
+         * @param damageDealt     the health points removed from the enemies
+         * @param damagePrevented the damage the hero will not take
+         * @param energyUsed      the energy spent by the plan
+         * @param manaNeeded      the mana the hero needs for the plan
+         */
+        public TurnPlan {
+            steps = List.copyOf(steps);
+        }
+
+        /**
+         * Returns the value maximized by the planner.
+         *
+         * @return the damage dealt plus the damage prevented
+         */
+        public int value() {
+            return damageDealt + damagePrevented;
+        }
+    }
+
+    /**
+     * Creates a new TurnPlanner. The planner keeps no state between two
+     * plans.
+     */
+    public TurnPlanner() {
+    }
+
+    /**
+     * Plans the rest of the turn of the hero of a simulated combat. The
+     * simulation is not modified.
+     * Items that cost no energy are planned as if they cost one, so that a plan
+     * stays finite.
+     *
+     * @param combat the combat, during the turn of the hero
+     * @return the best plan, empty if nothing is worth doing
+     */
+    public TurnPlan plan(CombatSimulation combat) {
+        Objects.requireNonNull(combat, "combat cannot be null");
+        int energy = combat.getHeroEnergy();
+        if (combat.isOver() || energy <= 0) {
+            return new TurnPlan(List.of(), 0, 0, 0, 0);
+        }
+
+        // Identical items give the same plans, only the first of each is kept
+        var weapons = new ArrayList<Integer>();
+        var armors = new ArrayList<Integer>();
+        int mana = combat.getHeroMana();
+        for (int i = 0; i < combat.getItemCount(); i++) {
+            int item = i;
+            if (combat.getItemManaCost(item) > mana) {
+                continue;
+            }
+            var kinds = combat.isWeapon(item) ? weapons : armors;
+            if (kinds.stream().noneMatch(other -> sameKind(combat, item, other))) {
+                kinds.add(item);
+            }
+        }
+        var weaponTable = new Knapsack(combat, weapons, energy);
+        var armorTable = new Knapsack(combat, armors, energy);
+
+        int enemies = combat.getEnemyCount();
+        int incoming = combat.getIncomingDamage();
+        int heroBlock = combat.getHeroBlock();
+        int states = (energy + 1) * (incoming + 1);
+
+        // best[state]: most damage dealt to the enemies seen so far, for a state
+        // (energy left, attack of the killed enemies)
+        var best = new int[states];
+        Arrays.fill(best, UNREACHABLE);
+        best[state(energy, 0, incoming)] = 0;
+        var spentEnergy = new int[enemies][states];
+        var killedBefore = new int[enemies][states];
+        for (int enemy = 0; enemy < enemies; enemy++) {
+            var next = new int[states];
+            Arrays.fill(next, UNREACHABLE);
+            int hp = combat.getEnemyHp(enemy);
+            int block = combat.getEnemyBlock(enemy);
+            boolean attacks = combat.isEnemyAlive(enemy) && combat.getEnemyIntent(enemy) == EnemyAction.ATTACK;
+            int attack = attacks ? combat.getEnemyAttack(enemy) : 0;
+            for (int e = 0; e <= energy; e++) {
+                for (int k = 0; k <= incoming; k++) {
+                    int value = best[state(e, k, incoming)];
+                    if (value == UNREACHABLE) {
+                        continue;
+                    }
+                    // Dead enemies are skipped, spending nothing on them
+                    int maxEnergy = hp > 0 ? e : 0;
+                    for (int spend = 0; spend <= maxEnergy; spend++) {
+                        int damage = weaponTable.best(spend);
+                        int dealt = Math.min(hp, Math.max(0, damage - block));
+                        int killed = hp > 0 && damage >= hp + block ? attack : 0;
+                        int target = state(e - spend, k + killed, incoming);
+                        if (value + dealt > next[target]) {
+                            next[target] = value + dealt;
+                            spentEnergy[enemy][target] = spend;
+                            killedBefore[enemy][target] = k;
+                        }
+                    }
+                }
+            }
+            best = next;
+        }
+
+        // Spend the rest on armors, only as much as the block of the hero and
+        // the surviving enemies leave to absorb
+        int unblocked = Math.max(0, incoming - heroBlock);
+        int bestValue = UNREACHABLE;
+        int bestState = -1;
+        int bestArmorEnergy = 0;
+        int bestEnergyUsed = 0;
+        for (int e = 0; e <= energy; e++) {
+            for (int k = 0; k <= incoming; k++) {
+                int dealt = best[state(e, k, incoming)];
+                if (dealt == UNREACHABLE) {
+                    continue;
+                }
+                int needed = Math.max(0, incoming - k - heroBlock);
+                int killCredit = unblocked - needed;
+                int absorbed = Math.min(needed, armorTable.best(e));
+                // The smallest budget absorbing as much
+                int armorEnergy = 0;
+                while (Math.min(needed, armorTable.best(armorEnergy)) < absorbed) {
+                    armorEnergy++;
+                }
+                int value = dealt + killCredit + absorbed;
+                int energyUsed = energy - e + armorEnergy;
+                if (value > bestValue || value == bestValue && energyUsed < bestEnergyUsed) {
+                    bestValue = value;
+                    bestState = state(e, k, incoming);
+                    bestArmorEnergy = armorEnergy;
+                    bestEnergyUsed = energyUsed;
+                }
+            }
+        }
+
+        // Walk the choices back from the last enemy
+        int e = bestState / (incoming + 1);
+        int k = bestState % (incoming + 1);
+        int dealt = best[bestState];
+        var weaponSteps = new ArrayList<List<Step>>();
+        for (int enemy = enemies - 1; enemy >= 0; enemy--) {
+            int state = state(e, k, incoming);
+            int spend = spentEnergy[enemy][state];
+            var steps = new ArrayList<Step>();
+            for (int item : weaponTable.items(spend)) {
+                steps.add(new Step(item, enemy));
+            }
+            weaponSteps.add(steps);
+            e += spend;
+            k = killedBefore[enemy][state];
+        }
+        var steps = new ArrayList<Step>();
+        for (int i = weaponSteps.size() - 1; i >= 0; i--) {
+            steps.addAll(weaponSteps.get(i));
+        }
+        for (int item : armorTable.items(bestArmorEnergy)) {
+            steps.add(new Step(item, -1));
+        }
+        int energyUsed = 0;
+        int manaNeeded = 0;
+        for (var step : steps) {
+            energyUsed += combat.getItemEnergyCost(step.item());
+            manaNeeded = Math.max(manaNeeded, combat.getItemManaCost(step.item()));
+        }
+        return new TurnPlan(steps, dealt, bestValue - dealt, energyUsed, manaNeeded);
+    }
+
+    /**
+     * Plays the first step of the plan of the turn, targeting its enemy.
+     *
+     * @param combat the simulated combat
+     * @param random not used, the planner is deterministic
+     * @return the item to use, or -1 to end the turn
+     */
+    @Override
+    public int chooseItem(CombatSimulation combat, RandomGenerator random) {
+        var plan = plan(combat);
+        if (plan.steps().isEmpty()) {
+            return -1;
+        }
+        var step = plan.steps().getFirst();
+        if (step.target() >= 0) {
+            combat.setTarget(step.target());
+        }
+        return step.item();
+    }
+
+    private static int state(int energy, int killed, int maxKilled) {
+        return energy * (maxKilled + 1) + killed;
+    }
+
+    private static boolean sameKind(CombatSimulation combat, int item, int other) {
+        return combat.isWeapon(item) == combat.isWeapon(other)
+                && combat.getItemEnergyCost(item) == combat.getItemEnergyCost(other)
+                && combat.getItemDamage(item) == combat.getItemDamage(other)
+                && combat.getItemProtection(item) == combat.getItemProtection(other);
+    }
+
+    private static int plannedCost(CombatSimulation combat, int item) {
+        return Math.max(1, combat.getItemEnergyCost(item));
+    }
+
+    /**
+     * The most damage, or protection, reachable with each budget of energy,
+     * using the given items any number of times.
+     */
+    private static final class Knapsack {
+        private final int[] best;
+        // The item used last to reach the best value, or LESS_ENERGY when a
+        // smaller budget does as well, or NONE
+        private final int[] choice;
+        private final CombatSimulation combat;
+
+        private Knapsack(CombatSimulation combat, List<Integer> items, int maxEnergy) {
+            this.combat = combat;
+            this.best = new int[maxEnergy + 1];
+            this.choice = new int[best.length];
+            for (int e = 0; e <= maxEnergy; e++) {
+                choice[e] = NONE;
+                if (e > 0 && best[e - 1] > best[e]) {
+                    best[e] = best[e - 1];
+                    choice[e] = LESS_ENERGY;
+                }
+                for (int item : items) {
+                    int cost = plannedCost(combat, item);
+                    if (cost > e) {
+                        continue;
+                    }
+                    int value = best[e - cost] + combat.getItemDamage(item) + combat.getItemProtection(item);
+                    if (value > best[e]) {
+                        best[e] = value;
+                        choice[e] = item;
+                    }
+                }
+            }
+        }
+
+        private int best(int energy) {
+            return best[energy];
+        }
+
+        /**
+         * Returns the items reaching the best value of a budget.
+         */
+        private List<Integer> items(int energy) {
+            var items = new ArrayList<Integer>();
+            while (true) {
+                int item = choice[energy];
+                switch (item) {
+                    case NONE -> {
+                        return items;
+                    }
+                    case LESS_ENERGY -> energy--;
+                    default -> {
+                        items.add(item);
+                        energy -= plannedCost(combat, item);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -5,20 +5,20 @@ import java.util.Objects;
 /**
  * Represents an enemy in the game with attributes such as health points,
  * attack, defense, block, and gold drop.
+ * The stats shared by all the enemies of a kind are kept in an
+ * {@link EnemyTemplate}; an enemy only holds what changes during a combat.
  * 
  */
 public class Enemy {
-	private final String name;
+	private final EnemyTemplate template;
 	private int hp;
 	private int attack;
 	private int defense;
 	private int block;
-	private final int maxHp;
-	private final int goldDrop;
-	private final int xpDrop;
 
 	/**
-	 * Creates a new Enemy with the specified attributes.
+	 * Creates a new Enemy with the specified attributes, of a kind that is not
+	 * registered (see {@link EnemyTemplate#of}).
 	 * 
 	 * @param name     the name of the enemy
 	 * @param maxHp    the maximum health points of the enemy
@@ -28,13 +28,19 @@ public class Enemy {
 	 * @param xpDrop   the amount of XP dropped by the enemy upon defeat
 	 */
 	public Enemy(String name, int maxHp, int attack, int defense, int goldDrop, int xpDrop) {
-		this.name = Objects.requireNonNull(name);
-		this.maxHp = maxHp;
-		this.hp = maxHp;
-		this.attack = attack;
-		this.defense = defense;
-		this.goldDrop = goldDrop;
-		this.xpDrop = xpDrop;
+		this(EnemyTemplate.of(name, maxHp, attack, defense, goldDrop, xpDrop));
+	}
+
+	/**
+	 * Creates a new Enemy of the specified kind, with full health points.
+	 * 
+	 * @param template the stats of the kind of enemy
+	 */
+	public Enemy(EnemyTemplate template) {
+		this.template = Objects.requireNonNull(template, "template cannot be null");
+		this.hp = template.getMaxHp();
+		this.attack = template.getAttack();
+		this.defense = template.getDefense();
 		this.block = 0;
 	}
 
@@ -44,7 +50,7 @@ public class Enemy {
 	 * @return a new Rat Wolf enemy instance
 	 */
 	public static Enemy ratWolf() {
-		return new Enemy("Rat Wolf", 10, 1, 3, 6, 3);
+		return new Enemy(EnemyTemplate.RAT_WOLF);
 	}
 
 	/**
@@ -53,7 +59,7 @@ public class Enemy {
 	 * @return a new Small Rat Wolf enemy instance
 	 */
 	public static Enemy smallRatWolf() {
-		return new Enemy("Small Rat Wolf", 5, 1, 0, 3, 2);
+		return new Enemy(EnemyTemplate.SMALL_RAT_WOLF);
 	}
 
 	/**
@@ -62,7 +68,7 @@ public class Enemy {
 	 * @return a new Goblin enemy instance
 	 */
 	public static Enemy goblin() {
-		return new Enemy("Goblin", 18, 8, 3, 8, 5);
+		return new Enemy(EnemyTemplate.GOBLIN);
 	}
 
 	/**
@@ -71,7 +77,7 @@ public class Enemy {
 	 * @return a new Goblin Chief enemy instance
 	 */
 	public static Enemy goblinChief() {
-		return new Enemy("Goblin Chief", 22, 9, 5, 10, 7);
+		return new Enemy(EnemyTemplate.GOBLIN_CHIEF);
 	}
 
 	/**
@@ -80,7 +86,7 @@ public class Enemy {
 	 * @return a new Demon enemy instance
 	 */
 	public static Enemy demon() {
-		return new Enemy("Demon", 30, 12, 7, 15, 10);
+		return new Enemy(EnemyTemplate.DEMON);
 	}
 
 	/**
@@ -89,7 +95,7 @@ public class Enemy {
 	 * @return a new Demon King enemy instance
 	 */
 	public static Enemy demonKing() {
-		return new Enemy("Demon King", 35, 14, 9, 20, 15);
+		return new Enemy(EnemyTemplate.DEMON_KING);
 	}
 
 	/**
@@ -98,7 +104,7 @@ public class Enemy {
 	 * @return a new Frog Wizard enemy instance
 	 */
 	public static Enemy frogWizard() {
-		return new Enemy("Frog Wizard", 25, 10, 5, 12, 8);
+		return new Enemy(EnemyTemplate.FROG_WIZARD);
 	}
 
 	/**
@@ -107,7 +113,7 @@ public class Enemy {
 	 * @return a new Living Shadow enemy instance
 	 */
 	public static Enemy livingShadow() {
-		return new Enemy("Living Shadow", 20, 11, 4, 10, 7);
+		return new Enemy(EnemyTemplate.LIVING_SHADOW);
 	}
 
 	/**
@@ -116,7 +122,7 @@ public class Enemy {
 	 * @return a new Bee Queen enemy instance
 	 */
 	public static Enemy beeQueen() {
-		return new Enemy("Bee Queen", 40, 13, 8, 25, 12);
+		return new Enemy(EnemyTemplate.BEE_QUEEN);
 	}
 
 	/**
@@ -128,6 +134,15 @@ public class Enemy {
 		return hp;
 	}
 
+	/**
+	 * Returns the maximum health points of the enemy.
+	 * 
+	 * @return the maximum health points
+	 */
+	public int getMaxHp() {
+		return template.getMaxHp();
+	}
+
 	/**
 	 * Checks if the enemy is alive (hp > 0).
 	 * 
@@ -143,7 +158,7 @@ public class Enemy {
 	 * @param hp the new health points value
 	 */
 	public void setHp(int hp) {
-		this.hp = Math.min(Math.max(hp, 0), maxHp);
+		this.hp = Math.min(Math.max(hp, 0), template.getMaxHp());
 	}
 
 	/**
@@ -206,7 +221,7 @@ public class Enemy {
 	 * @return the gold drop amount
 	 */
 	public int getGoldDrop() {
-		return goldDrop;
+		return template.getGoldDrop();
 	}
 
 	/**
@@ -215,7 +230,7 @@ public class Enemy {
 	 * @return the XP drop amount
 	 */
 	public int getXpDrop() {
-		return xpDrop;
+		return template.getXpDrop();
 	}
 
 	/**
@@ -224,7 +239,16 @@ public class Enemy {
 	 * @return the name of the enemy
 	 */
 	public String getName() {
-		return name;
+		return template.getName();
+	}
+
+	/**
+	 * Returns the stats shared by the enemies of the same kind.
+	 * 
+	 * @return the template of the enemy
+	 */
+	public EnemyTemplate getTemplate() {
+		return template;
 	}
 
 	/**
@@ -234,7 +258,7 @@ public class Enemy {
 	 */
 	@Override
 	public String toString() {
-		return "Enemy - Name=" + name + ", HP=" + hp + "/" + maxHp + ", Attack=" + attack + ", Defense=" + defense
-				+ ", Block=" + block;
+		return "Enemy - Name=" + template.getName() + ", HP=" + hp + "/" + template.getMaxHp() + ", Attack=" + attack
+				+ ", Defense=" + defense + ", Block=" + block;
 	}
 }
@@ -0,0 +1,229 @@
+package fr.uge.backpackhero.model.entity;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * The stats shared by all the enemies of a kind: name, maximum health points,
+ * attack, defense and rewards.
+ * Templates are immutable, so an {@link Enemy} only keeps its template and
+ * what changes during a combat. The kinds of the game are registered, each
+ * with a small id, so that simulations can refer to a kind of enemy by its
+ * id; other kinds get an unregistered template, unless they are registered
+ * explicitly with {@link #register}. Two templates with the same stats are
+ * equal.
+ * 
+ */
+public final class EnemyTemplate {
+	/** Id of a template that is not registered. */
+	public static final int UNREGISTERED = -1;
+
+	// Replaced by a longer copy on registration, so it is read without locking
+	private static volatile EnemyTemplate[] registry = new EnemyTemplate[0];
+
+	/** Template of the Rat Wolf. */
+	public static final EnemyTemplate RAT_WOLF = register("Rat Wolf", 10, 1, 3, 6, 3);
+	/** Template of the Small Rat Wolf. */
+	public static final EnemyTemplate SMALL_RAT_WOLF = register("Small Rat Wolf", 5, 1, 0, 3, 2);
+	/** Template of the Goblin. */
+	public static final EnemyTemplate GOBLIN = register("Goblin", 18, 8, 3, 8, 5);
+	/** Template of the Goblin Chief. */
+	public static final EnemyTemplate GOBLIN_CHIEF = register("Goblin Chief", 22, 9, 5, 10, 7);
+	/** Template of the Demon. */
+	public static final EnemyTemplate DEMON = register("Demon", 30, 12, 7, 15, 10);
+	/** Template of the Demon King. */
+	public static final EnemyTemplate DEMON_KING = register("Demon King", 35, 14, 9, 20, 15);
+	/** Template of the Frog Wizard. */
+	public static final EnemyTemplate FROG_WIZARD = register("Frog Wizard", 25, 10, 5, 12, 8);
+	/** Template of the Living Shadow. */
+	public static final EnemyTemplate LIVING_SHADOW = register("Living Shadow", 20, 11, 4, 10, 7);
+	/** Template of the Bee Queen. */
+	public static final EnemyTemplate BEE_QUEEN = register("Bee Queen", 40, 13, 8, 25, 12);
+
+	private final int id;
+	private final String name;
+	private final int maxHp;
+	private final int attack;
+	private final int defense;
+	private final int goldDrop;
+	private final int xpDrop;
+
+	private EnemyTemplate(int id, String name, int maxHp, int attack, int defense, int goldDrop, int xpDrop) {
+		this.id = id;
+		this.name = name;
+		this.maxHp = maxHp;
+		this.attack = attack;
+		this.defense = defense;
+		this.goldDrop = goldDrop;
+		this.xpDrop = xpDrop;
+	}
+
+	/**
+	 * Returns an unregistered template with the specified stats, for an enemy
+	 * that is not one of the kinds of the game.
+	 * 
+	 * @param name     the name of the enemy
+	 * @param maxHp    the maximum health points of the enemy
+	 * @param attack   the attack value of the enemy
+	 * @param defense  the defense value of the enemy
+	 * @param goldDrop the amount of gold dropped by the enemy upon defeat
+	 * @param xpDrop   the amount of XP dropped by the enemy upon defeat
+	 * @return a template with these stats and the id {@link #UNREGISTERED}
+	 */
+	public static EnemyTemplate of(String name, int maxHp, int attack, int defense, int goldDrop, int xpDrop) {
+		Objects.requireNonNull(name, "name cannot be null");
+		return new EnemyTemplate(UNREGISTERED, name, maxHp, attack, defense, goldDrop, xpDrop);
+	}
+
+	/**
+	 * Registers a new kind of enemy, giving it the next id.
+	 * 
+	 * @param name     the name of the enemy
+	 * @param maxHp    the maximum health points of the enemy
+	 * @param attack   the attack value of the enemy
+	 * @param defense  the defense value of the enemy
+	 * @param goldDrop the amount of gold dropped by the enemy upon defeat
+	 * @param xpDrop   the amount of XP dropped by the enemy upon defeat
+	 * @return the registered template
+	 */
+	public static synchronized EnemyTemplate register(String name, int maxHp, int attack, int defense, int goldDrop,
+			int xpDrop) {
+		Objects.requireNonNull(name, "name cannot be null");
+		var templates = registry;
+		var template = new EnemyTemplate(templates.length, name, maxHp, attack, defense, goldDrop, xpDrop);
+		templates = Arrays.copyOf(templates, templates.length + 1);
+		templates[template.id] = template;
+		registry = templates;
+		return template;
+	}
+
+	/**
+	 * Returns the registered template with the specified id.
+	 * 
+	 * @param id the id of the template
+	 * @return the template
+	 * @throws IndexOutOfBoundsException if no template has this id
+	 */
+	public static EnemyTemplate byId(int id) {
+		var templates = registry;
+		return templates[Objects.checkIndex(id, templates.length)];
+	}
+
+	/**
+	 * Returns the number of templates registered, the ids going from 0 to this
+	 * number excluded.
+	 * 
+	 * @return the number of templates
+	 */
+	public static int count() {
+		return registry.length;
+	}
+
+	/**
+	 * Checks if the template is registered.
+	 * 
+	 * @return true if the template has an id, false otherwise
+	 */
+	public boolean isRegistered() {
+		return id != UNREGISTERED;
+	}
+
+	/**
+	 * Returns the id of the template.
+	 * 
+	 * @return the id, from 0 in the order of registration, or
+	 *         {@link #UNREGISTERED}
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * Returns the name of the enemy.
+	 * 
+	 * @return the name of the enemy
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the maximum health points of the enemy.
+	 * 
+	 * @return the maximum health points
+	 */
+	public int getMaxHp() {
+		return maxHp;
+	}
+
+	/**
+	 * Returns the attack value an enemy starts with.
+	 * 
+	 * @return the attack value
+	 */
+	public int getAttack() {
+		return attack;
+	}
+
+	/**
+	 * Returns the defense value an enemy starts with.
+	 * 
+	 * @return the defense value
+	 */
+	public int getDefense() {
+		return defense;
+	}
+
+	/**
+	 * Returns the amount of gold dropped by the enemy upon defeat.
+	 * 
+	 * @return the gold drop amount
+	 */
+	public int getGoldDrop() {
+		return goldDrop;
+	}
+
+	/**
+	 * Returns the amount of XP dropped by the enemy upon defeat.
+	 * 
+	 * @return the XP drop amount
+	 */
+	public int getXpDrop() {
+		return xpDrop;
+	}
+
+	/**
+	 * Checks if this template has the same stats as another object, whether
+	 * they are registered or not.
+	 * 
+	 * @param obj the object to compare with
+	 * @return true if the object is a template with the same stats
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof EnemyTemplate other && name.equals(other.name) && maxHp == other.maxHp
+				&& attack == other.attack && defense == other.defense && goldDrop == other.goldDrop
+				&& xpDrop == other.xpDrop;
+	}
+
+	/**
+	 * Returns a hash code of the stats of the template.
+	 * 
+	 * @return the hash code
+	 */
+	@Override
+	public int hashCode() {
+		return Objects.hash(name, maxHp, attack, defense, goldDrop, xpDrop);
+	}
+
+	/**
+	 * Returns a string representation of the template.
+	 * 
+	 * @return a string representation of the template
+	 */
+	@Override
+	public String toString() {
+		return "EnemyTemplate #" + id + " - Name=" + name + ", MaxHP=" + maxHp + ", Attack=" + attack + ", Defense="
+				+ defense + ", Gold=" + goldDrop + ", XP=" + xpDrop;
+	}
+}
@@ -73,6 +73,15 @@ public class Hero {
         return MAX_HP;
     }
 
+    /**
+     * Returns the energy of the hero at the start of each turn.
+     * 
+     * @return the maximum energy
+     */
+    public int getMaxEnergy() {
+        return MAX_ENERGY;
+    }
+
     /**
      * Returns the current energy of the hero.
      * 
@@ -1,10 +1,15 @@
 package fr.uge.backpackhero.model.item;
 
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
@@ -23,10 +28,18 @@ public class Backpack {
 
     private final int width;
     private final int height;
-    private int mana;
+    private int mana; // Running total of the mana provided by the items, kept up to date by place/remove
+    private Gold gold; // The gold stack of the backpack, or null if there is none
     private final Map<Position, Item> items;
-    private final Set<Position> occupiedCells; // We use a set to track occupied cells faster
-    private final Set<Position> unlockedCells; // Cells that can be used
+    private final CellMask occupiedMask; // Bit (y * width + x) is set when an item covers the cell
+    private final CellMask unlockedMask; // Bit (y * width + x) is set when the cell can be used
+    private final CellMask anchorMask; // Bit (y * width + x) is set when an item is anchored on the cell
+    private final CellMask frontierMask; // Bit (y * width + x) is set when the cell is locked and can be unlocked
+    private final Set<Position> occupiedCells; // Read-only view over occupiedMask
+    private final Set<Position> unlockedCells; // Read-only view over unlockedMask
+    private final Item[] cellItems; // Item covering each cell, indexed like the masks
+    private final Position[] cellAnchors; // Anchor of the item covering each cell
+    private BackpackSnapshot lastSnapshot; // Last snapshot taken or restored, shared by the next one
 
     /**
      * Creates a new Backpack with the specified width and height.
@@ -42,8 +55,14 @@ public class Backpack {
         this.width = width;
         this.height = height;
         this.items = new HashMap<>();
-        this.occupiedCells = new HashSet<>();
-        this.unlockedCells = new HashSet<>();
+        this.occupiedMask = new CellMask(width * height);
+        this.unlockedMask = new CellMask(width * height);
+        this.anchorMask = new CellMask(width * height);
+        this.frontierMask = new CellMask(width * height);
+        this.occupiedCells = new CellView(occupiedMask);
+        this.unlockedCells = new CellView(unlockedMask);
+        this.cellItems = new Item[width * height];
+        this.cellAnchors = new Position[width * height];
         this.mana = 0;
 
         // Start with 9 unlocked cells in a 3x3 square in the center
@@ -52,12 +71,13 @@ public class Backpack {
         int startRow = (height - 3) / 2; // (5-3)/2 = 1
         for (int row = startRow; row < startRow + 3; row++) {
             for (int col = startCol; col < startCol + 3; col++) {
-                unlockedCells.add(new Position(col, row));
+                unlockedMask.set(indexOf(col, row));
             }
         }
+        rebuildFrontier();
 
-        place(Weapon.woodenSword(), new Position(startCol, startRow));
-        place(Armor.woodenShield(), new Position(startCol + 1, startRow));
+        place(Weapon.woodenSword(), Position.of(startCol, startRow));
+        place(Armor.woodenShield(), Position.of(startCol + 1, startRow));
     }
 
     /**
@@ -90,6 +110,7 @@ public class Backpack {
     /**
      * Returns a set of positions that are currently occupied by items in the
      * backpack.
+     * The set is a read-only view that follows the changes of the backpack.
      * 
      * @return a set of occupied positions in the backpack
      */
@@ -99,6 +120,7 @@ public class Backpack {
 
     /**
      * Returns a set of positions that are unlocked (usable) in the backpack.
+     * The set is a read-only view that follows the changes of the backpack.
      * 
      * @return a set of unlocked positions in the backpack
      */
@@ -106,6 +128,40 @@ public class Backpack {
         return unlockedCells;
     }
 
+    /**
+     * Returns the cells that are unlocked and not occupied, as a new mask indexed
+     * by {@code y * width + x}.
+     * 
+     * @return a mask of the free cells of the backpack
+     */
+    public CellMask getFreeCells() {
+        var free = unlockedMask.copy();
+        free.andNot(occupiedMask);
+        return free;
+    }
+
+    /**
+     * Returns the unlocked cells, occupied or not, as a new mask indexed by
+     * {@code y * width + x}.
+     * 
+     * @return a mask of the unlocked cells of the backpack
+     */
+    public CellMask getUnlockedMask() {
+        return unlockedMask.copy();
+    }
+
+    /**
+     * Returns the cells on which an item is anchored, as a new mask indexed by
+     * {@code y * width + x}.
+     * The anchor of a shape is not always one of its cells, so an anchor cell may
+     * be free; it still cannot receive another anchor.
+     * 
+     * @return a mask of the anchor cells of the backpack
+     */
+    public CellMask getAnchorCells() {
+        return anchorMask.copy();
+    }
+
     /**
      * Checks if a cell is unlocked (usable).
      * 
@@ -113,7 +169,8 @@ public class Backpack {
      * @return true if the cell is unlocked, false otherwise
      */
     public boolean isUnlocked(Position pos) {
-        return unlockedCells.contains(pos);
+        Objects.requireNonNull(pos, "pos cannot be null");
+        return pos.checkBounds(width, height) && unlockedMask.get(indexOf(pos.x(), pos.y()));
     }
 
     /**
@@ -128,7 +185,7 @@ public class Backpack {
         if (!pos.checkBounds(width, height)) {
             return false;
         }
-        return !unlockedCells.contains(pos) && hasAdjacentUnlockedCell(pos);
+        return frontierMask.get(indexOf(pos.x(), pos.y()));
     }
 
     /**
@@ -142,7 +199,26 @@ public class Backpack {
         if (!canUnlockCell(pos)) {
             return false;
         }
-        unlockedCells.add(pos);
+        unlockedMask.set(indexOf(pos.x(), pos.y()));
+        updateFrontierAround(pos.x(), pos.y());
+        return true;
+    }
+
+    /**
+     * Locks an unlocked cell again, which undoes {@link #unlockCell(Position)}.
+     * The cell must not be covered by an item.
+     */
+    boolean lockCell(Position pos) {
+        Objects.requireNonNull(pos, "pos cannot be null");
+        if (!pos.checkBounds(width, height)) {
+            return false;
+        }
+        int index = indexOf(pos.x(), pos.y());
+        if (!unlockedMask.get(index) || occupiedMask.get(index)) {
+            return false;
+        }
+        unlockedMask.clear(index);
+        updateFrontierAround(pos.x(), pos.y());
         return true;
     }
 
@@ -154,38 +230,77 @@ public class Backpack {
      */
     public List<Position> getUnlockableCells() {
         var candidates = new ArrayList<Position>();
-        for (int row = 0; row < height; row++) {
-            for (int col = 0; col < width; col++) {
-                var pos = new Position(col, row);
-                if (canUnlockCell(pos)) {
-                    candidates.add(pos);
-                }
-            }
+        for (int index = frontierMask.nextSetBit(0); index >= 0; index = frontierMask.nextSetBit(index + 1)) {
+            candidates.add(Position.of(index % width, index / width));
         }
         return candidates;
     }
 
     /**
-     * Checks if a position has at least one adjacent unlocked cell.
+     * Returns the cells that can be unlocked, as a new mask indexed by
+     * {@code y * width + x}.
+     * 
+     * @return a mask of the unlockable cells
+     */
+    public CellMask getUnlockableMask() {
+        return frontierMask.copy();
+    }
+
+    /**
+     * Updates the frontier bit of a cell whose lock state changed and of its
+     * neighbours, the only cells whose unlockability depends on it.
+     */
+    private void updateFrontierAround(int x, int y) {
+        updateFrontier(x, y);
+        if (x > 0) {
+            updateFrontier(x - 1, y);
+        }
+        if (x < width - 1) {
+            updateFrontier(x + 1, y);
+        }
+        if (y > 0) {
+            updateFrontier(x, y - 1);
+        }
+        if (y < height - 1) {
+            updateFrontier(x, y + 1);
+        }
+    }
+
+    private void updateFrontier(int x, int y) {
+        int index = indexOf(x, y);
+        if (!unlockedMask.get(index) && hasAdjacentUnlockedCell(x, y)) {
+            frontierMask.set(index);
+        } else {
+            frontierMask.clear(index);
+        }
+    }
+
+    /**
+     * Recomputes the whole frontier from the unlocked cells.
      */
-    private boolean hasAdjacentUnlockedCell(Position pos) {
-        int[][] deltas = { { 0, 1 }, { 0, -1 }, { 1, 0 }, { -1, 0 } };
-        for (var delta : deltas) {
-            var adjacent = new Position(pos.x() + delta[0], pos.y() + delta[1]);
-            if (adjacent.checkBounds(width, height) && unlockedCells.contains(adjacent)) {
-                return true;
+    private void rebuildFrontier() {
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                updateFrontier(x, y);
             }
         }
-        return false;
     }
 
     /**
-     * Sets the mana value of the backpack.
-     * 
-     * @param mana the mana value to set
+     * Checks if a cell has at least one adjacent unlocked cell.
+     */
+    private boolean hasAdjacentUnlockedCell(int x, int y) {
+        return (x > 0 && unlockedMask.get(indexOf(x - 1, y)))
+                || (x < width - 1 && unlockedMask.get(indexOf(x + 1, y)))
+                || (y > 0 && unlockedMask.get(indexOf(x, y - 1)))
+                || (y < height - 1 && unlockedMask.get(indexOf(x, y + 1)));
+    }
+
+    /**
+     * Returns the index of a cell in the occupancy masks.
      */
-    public void setMana(int mana) {
-        this.mana = mana;
+    private int indexOf(int x, int y) {
+        return y * width + x;
     }
 
     /**
@@ -194,10 +309,6 @@ public class Backpack {
      * @return the total mana provided by the mana stones
      */
     public int getMana() {
-        mana = 0;
-        for (var item : items.values()) {
-            mana += item.getManaProvided();
-        }
         return mana;
     }
 
@@ -208,7 +319,8 @@ public class Backpack {
      * @return true if the position is occupied, false otherwise
      */
     public boolean isOccupied(Position pos) {
-        return occupiedCells.contains(Objects.requireNonNull(pos, "pos cannot be null"));
+        Objects.requireNonNull(pos, "pos cannot be null");
+        return pos.checkBounds(width, height) && occupiedMask.get(indexOf(pos.x(), pos.y()));
     }
 
     /**
@@ -222,21 +334,143 @@ public class Backpack {
     public boolean canPlace(Item item, Position anchor) {
         Objects.requireNonNull(item, "item cannot be null");
         Objects.requireNonNull(anchor, "anchor cannot be null");
-        var cells = item.getShape().getAbsolutePositions(anchor);
-        for (var cell : cells) {
-            if (!cell.checkBounds(width, height)) {
+        return fits(item.getShape(), anchor.x(), anchor.y(), occupiedMask, anchorMask);
+    }
+
+    /**
+     * Checks if a shape anchored at (x, y) only covers unlocked cells that are
+     * not set in the given occupied mask, and does not share its anchor with
+     * one set in the given anchor mask.
+     * Each row of the shape is tested against the masks with a single AND.
+     */
+    private boolean fits(Shape shape, int anchorX, int anchorY, CellMask occupied, CellMask anchors) {
+        int shapeWidth = shape.getWidth();
+        int shapeHeight = shape.getHeight();
+        if (anchorX < 0 || anchorY < 0 || anchorX + shapeWidth > width || anchorY + shapeHeight > height) {
+            return false;
+        }
+        if (anchors.get(indexOf(anchorX, anchorY))) {
+            return false;
+        }
+        for (int row = 0; row < shapeHeight; row++) {
+            int index = indexOf(anchorX, anchorY + row);
+            long rowMask = shape.getRowMask(row);
+            if ((unlockedMask.window(index, shapeWidth) & rowMask) != rowMask
+                    || (occupied.window(index, shapeWidth) & rowMask) != 0) {
                 return false;
             }
-            if (!unlockedCells.contains(cell)) {
-                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Lists every legal placement of an item in its four orientations, as
+     * packed ints: {@code (y * width + x) << 2 | rotation}, rotation being the
+     * number of quarter turns to apply to the current shape of the item (see
+     * {@link #unpackPlacement(Item, int)}). Orientations covering the same cells
+     * as a previous one are left out. Placements are grouped by rotation, then
+     * in row-major order of their anchors.
+     * 
+     * @param item the item to place
+     * @return the packed legal placements of the item
+     */
+    public int[] legalPlacements(Item item) {
+        Objects.requireNonNull(item, "item cannot be null");
+        return legalPlacements(item.getShape());
+    }
+
+    /**
+     * Lists every legal placement of a shape in its four orientations, packed as
+     * described in {@link #legalPlacements(Item)} with rotations relative to the
+     * given shape.
+     * For each orientation, the set of legal anchors is the intersection of the
+     * free cells shifted by the offset of each cell of the shape, so every anchor
+     * is tested at once, one word at a time.
+     * 
+     * @param shape the shape to place
+     * @return the packed legal placements of the shape
+     */
+    public int[] legalPlacements(Shape shape) {
+        Objects.requireNonNull(shape, "shape cannot be null");
+        var free = getFreeCells();
+        var legal = new CellMask(width * height);
+        var result = new int[16];
+        int count = 0;
+        for (int rotation = 0; rotation < 4; rotation++) {
+            if (shape.isRedundantRotation(rotation) || !computeLegalAnchors(legal, shape.rotate(rotation), free)) {
+                continue;
             }
-            if (occupiedCells.contains(cell)) {
-                return false;
+            for (int index = legal.nextSetBit(0); index >= 0; index = legal.nextSetBit(index + 1)) {
+                if (count == result.length) {
+                    result = Arrays.copyOf(result, count * 2);
+                }
+                result[count++] = index << 2 | rotation;
             }
         }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Decodes a placement returned by {@link #legalPlacements(Item)}.
+     * 
+     * @param item   the item the placement was computed for
+     * @param packed the packed placement
+     * @return the placement
+     */
+    public Placement unpackPlacement(Item item, int packed) {
+        int index = packed >>> 2;
+        Objects.checkIndex(index, width * height);
+        return new Placement(item, Position.of(index % width, index / width), packed & 3);
+    }
+
+    /**
+     * Sets exactly the anchors where a shape can be placed given the free cells,
+     * or returns false if the shape is too big for the backpack.
+     */
+    private boolean computeLegalAnchors(CellMask legal, Shape shape, CellMask free) {
+        if (!legal.fitAnchors(free, shape, width)) {
+            return false;
+        }
+        legal.andNot(anchorMask);
         return true;
     }
 
+    /**
+     * Records which item and anchor cover the cells of a shape, or forgets them
+     * when item is null.
+     */
+    private void indexCells(Shape shape, Position anchor, Item item) {
+        var cellAnchor = item == null ? null : anchor;
+        for (int row = 0; row < shape.getHeight(); row++) {
+            int rowIndex = indexOf(anchor.x(), anchor.y() + row);
+            for (long bits = shape.getRowMask(row); bits != 0; bits &= bits - 1) {
+                int index = rowIndex + Long.numberOfTrailingZeros(bits);
+                cellItems[index] = item;
+                cellAnchors[index] = cellAnchor;
+            }
+        }
+    }
+
+    /**
+     * Marks the cells covered by a shape anchored at (x, y), and its anchor, as
+     * occupied or free. The shape must be inside the backpack.
+     */
+    private void mark(Shape shape, int anchorX, int anchorY, boolean occupied) {
+        if (occupied) {
+            anchorMask.set(indexOf(anchorX, anchorY));
+        } else {
+            anchorMask.clear(indexOf(anchorX, anchorY));
+        }
+        for (int row = 0; row < shape.getHeight(); row++) {
+            int index = indexOf(anchorX, anchorY + row);
+            if (occupied) {
+                occupiedMask.orWindow(index, shape.getRowMask(row));
+            } else {
+                occupiedMask.andNotWindow(index, shape.getRowMask(row));
+            }
+        }
+    }
+
     /**
      * Places an item at the specified anchor position in the backpack.
      * 
@@ -250,11 +484,72 @@ public class Backpack {
         if (!canPlace(item, anchor)) {
             return false;
         }
-        items.put(anchor, item);
-        occupiedCells.addAll(item.getShape().getAbsolutePositions(anchor));
+        add(item, anchor);
+        assert countersMatchItems() : "mana or gold out of sync after place";
+        return true;
+    }
+
+    /**
+     * Places a batch of items, each turned as its placement says, all or nothing:
+     * the whole batch is first checked against the free cells, including the
+     * cells claimed by the previous placements of the batch, and the backpack is
+     * only modified if every placement is valid.
+     * 
+     * @param placements the placements to apply
+     * @return true if every item was placed, false if none was
+     */
+    public boolean placeAll(List<Placement> placements) {
+        Objects.requireNonNull(placements, "placements cannot be null");
+        var occupied = occupiedMask.copy();
+        var anchors = anchorMask.copy();
+        var batchItems = Collections.newSetFromMap(new IdentityHashMap<Item, Boolean>());
+        for (var placement : placements) {
+            Objects.requireNonNull(placement, "placements cannot contain null");
+            var shape = placement.shape();
+            var anchor = placement.anchor();
+            if (!batchItems.add(placement.item()) || !claim(occupied, anchors, shape, anchor.x(), anchor.y())) {
+                return false;
+            }
+        }
+        for (var placement : placements) {
+            var item = placement.item();
+            item.setShape(placement.shape());
+            add(item, placement.anchor());
+        }
+        assert countersMatchItems() : "mana or gold out of sync after placeAll";
         return true;
     }
 
+    /**
+     * Adds the cells of a shape to an occupied mask and its anchor to an anchor
+     * mask, or returns false if the shape does not fit in these masks.
+     */
+    private boolean claim(CellMask occupied, CellMask anchors, Shape shape, int anchorX, int anchorY) {
+        if (!fits(shape, anchorX, anchorY, occupied, anchors)) {
+            return false;
+        }
+        int anchor = indexOf(anchorX, anchorY);
+        anchors.set(anchor);
+        for (int row = 0; row < shape.getHeight(); row++) {
+            occupied.orWindow(anchor + row * width, shape.getRowMask(row));
+        }
+        return true;
+    }
+
+    /**
+     * Adds an item already known to fit and updates the masks, the cell index
+     * and the running totals.
+     */
+    private void add(Item item, Position anchor) {
+        items.put(anchor, item);
+        mark(item.getShape(), anchor.x(), anchor.y(), true);
+        indexCells(item.getShape(), anchor, item);
+        mana += item.getManaProvided();
+        if (gold == null) {
+            gold = asGold(item);
+        }
+    }
+
     /**
      * Removes the item at the specified anchor position from the backpack.
      * 
@@ -265,7 +560,13 @@ public class Backpack {
         Objects.requireNonNull(anchor, "anchor cannot be null");
         var item = items.remove(anchor);
         if (item != null) {
-            occupiedCells.removeAll(item.getShape().getAbsolutePositions(anchor));
+            mark(item.getShape(), anchor.x(), anchor.y(), false);
+            indexCells(item.getShape(), anchor, null);
+            mana -= item.getManaProvided();
+            if (item == gold) {
+                gold = scanForGold();
+            }
+            assert countersMatchItems() : "mana or gold out of sync after remove";
         }
         return item;
     }
@@ -279,14 +580,10 @@ public class Backpack {
      */
     public Optional<Item> getItemAt(Position pos) {
         Objects.requireNonNull(pos, "pos cannot be null");
-        for (var entry : items.entrySet()) {
-            var anchor = entry.getKey();
-            var item = entry.getValue();
-            if (item.getShape().getAbsolutePositions(anchor).contains(pos)) {
-                return Optional.of(item);
-            }
+        if (!pos.checkBounds(width, height)) {
+            return Optional.empty();
         }
-        return Optional.empty();
+        return Optional.ofNullable(cellItems[indexOf(pos.x(), pos.y())]);
     }
 
     /**
@@ -299,14 +596,10 @@ public class Backpack {
      */
     public Optional<Position> getAnchorAt(Position pos) {
         Objects.requireNonNull(pos, "pos cannot be null");
-        for (var entry : items.entrySet()) {
-            var anchor = entry.getKey();
-            var item = entry.getValue();
-            if (item.getShape().getAbsolutePositions(anchor).contains(pos)) {
-                return Optional.of(anchor);
-            }
+        if (!pos.checkBounds(width, height)) {
+            return Optional.empty();
         }
-        return Optional.empty();
+        return Optional.ofNullable(cellAnchors[indexOf(pos.x(), pos.y())]);
     }
 
     /**
@@ -324,26 +617,18 @@ public class Backpack {
             return false;
         }
 
-        var fromCells = item.getShape().getAbsolutePositions(fromAnchor);
-        var toCells = item.getShape().getAbsolutePositions(toAnchor);
-
-        for (var cell : toCells) {
-            if (!cell.checkBounds(width, height)) {
-                return false;
-            }
-            if (!unlockedCells.contains(cell)) {
-                return false;
-            }
-        }
-
-        for (var cell : toCells) {
-            if (occupiedCells.contains(cell) && !fromCells.contains(cell)) {
-                return false;
-            }
+        // The item is lifted so that it does not collide with itself
+        var shape = item.getShape();
+        mark(shape, fromAnchor.x(), fromAnchor.y(), false);
+        if (!fits(shape, toAnchor.x(), toAnchor.y(), occupiedMask, anchorMask)) {
+            mark(shape, fromAnchor.x(), fromAnchor.y(), true);
+            return false;
         }
-
-        remove(fromAnchor);
-        place(item, toAnchor);
+        items.remove(fromAnchor);
+        items.put(toAnchor, item);
+        mark(shape, toAnchor.x(), toAnchor.y(), true);
+        indexCells(shape, fromAnchor, null);
+        indexCells(shape, toAnchor, item);
         return true;
     }
 
@@ -354,20 +639,32 @@ public class Backpack {
      * @return true if the item was successfully rotated, false otherwise
      */
     public boolean rotateItem(Position anchor) {
+        return rotateItem(anchor, 1);
+    }
+
+    /**
+     * Rotates the item at the specified anchor position by a number of quarter
+     * turns clockwise in a single step, so only the final orientation has to fit.
+     */
+    boolean rotateItem(Position anchor, int quarterTurns) {
         Objects.requireNonNull(anchor, "anchor cannot be null");
         var item = items.get(anchor);
         if (item == null) {
             return false;
         }
-        remove(anchor);
-        item.setShape(item.getShape().rotate90());
-        if (place(item, anchor)) {
-            return true;
+        var shape = item.getShape();
+        var rotated = shape.rotate(quarterTurns);
+        mark(shape, anchor.x(), anchor.y(), false);
+        if (!fits(rotated, anchor.x(), anchor.y(), occupiedMask, anchorMask)) {
+            // If failed, the item keeps its original rotation
+            mark(shape, anchor.x(), anchor.y(), true);
+            return false;
         }
-        // If failed, undo the rotation (3 rotations = back to original rotation)
-        item.setShape(item.getShape().rotate270());
-        place(item, anchor);
-        return false;
+        item.setShape(rotated);
+        mark(rotated, anchor.x(), anchor.y(), true);
+        indexCells(shape, anchor, null);
+        indexCells(rotated, anchor, item);
+        return true;
     }
 
     /**
@@ -376,18 +673,45 @@ public class Backpack {
      * @return the Gold item if found, otherwise null
      */
     public Gold findGold() {
+        return gold;
+    }
+
+    /**
+     * Returns the item as a Gold, or null if it is another kind of item.
+     */
+    private static Gold asGold(Item item) {
+        return switch (item) {
+            case Gold gold -> gold;
+            default -> null;
+        };
+    }
+
+    /**
+     * Looks for a gold stack among all the items.
+     * Only used when the tracked gold stack leaves the backpack.
+     */
+    private Gold scanForGold() {
         for (Item item : items.values()) {
-            switch (item) {
-                case Gold gold -> {
-                    return gold;
-                }
-                default -> {
-                }
+            var found = asGold(item);
+            if (found != null) {
+                return found;
             }
         }
         return null;
     }
 
+    /**
+     * Debug check (run with -ea) comparing the running mana total and the
+     * tracked gold stack against a full recompute from the items.
+     */
+    private boolean countersMatchItems() {
+        int expectedMana = 0;
+        for (var item : items.values()) {
+            expectedMana += item.getManaProvided();
+        }
+        return mana == expectedMana && (gold == null ? scanForGold() == null : items.containsValue(gold));
+    }
+
     /**
      * Adds gold to the backpack.
      * If a Gold item already exists, the amount is added to it.
@@ -400,18 +724,14 @@ public class Backpack {
         if (amount <= 0)
             return true;
 
-        Gold gold = findGold();
         if (gold != null) {
             gold.setAmount(gold.getAmount() + amount);
             return true;
         }
 
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                Position p = new Position(x, y);
-                if (!occupiedCells.contains(p) && isUnlocked(p)) {
-                    return place(new Gold(amount), p);
-                }
+        for (int index = unlockedMask.nextSetBit(0); index >= 0; index = unlockedMask.nextSetBit(index + 1)) {
+            if (!occupiedMask.get(index)) {
+                return place(new Gold(amount), Position.of(index % width, index / width));
             }
         }
         return false;
@@ -423,7 +743,6 @@ public class Backpack {
      * @return the total amount of gold, or 0 if no gold is present
      */
     public int goldAmount() {
-        Gold gold = findGold();
         return (gold == null) ? 0 : gold.getAmount();
     }
 
@@ -436,15 +755,12 @@ public class Backpack {
      */
     public boolean placeFirstFit(Item item) {
         Objects.requireNonNull(item, "item cannot be null");
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                Position p = new Position(x, y);
-                if (canPlace(item, p)) {
-                    return place(item, p);
-                }
-            }
+        var legal = new CellMask(width * height);
+        if (!computeLegalAnchors(legal, item.getShape(), getFreeCells())) {
+            return false;
         }
-        return false;
+        int index = legal.nextSetBit(0);
+        return index >= 0 && place(item, Position.of(index % width, index / width));
     }
 
     /**
@@ -456,7 +772,6 @@ public class Backpack {
     public boolean spendGold(int cost) {
         if (cost <= 0)
             return true;
-        Gold gold = findGold();
         if (gold == null)
             return false;
         int current = gold.getAmount();
@@ -493,4 +808,130 @@ public class Backpack {
         return remove(anchor) != null;
     }
 
+    /**
+     * Takes an immutable snapshot of the content of the backpack.
+     * The snapshot shares with the previous one every mask and entry that did
+     * not change since, so taking a snapshot after each move is cheap.
+     * 
+     * @return a snapshot of the backpack
+     */
+    public BackpackSnapshot snapshot() {
+        var previous = lastSnapshot;
+        var entries = new BackpackSnapshot.Entry[items.size()];
+        boolean sameEntries = previous != null && previous.getItemCount() == entries.length;
+        int i = 0;
+        for (var entry : items.entrySet()) {
+            var item = entry.getValue();
+            var reused = previous == null ? null : previous.entryAt(i);
+            if (reused != null && reused.anchor().equals(entry.getKey()) && reused.item() == item
+                    && reused.shape() == item.getShape()) {
+                entries[i] = reused;
+            } else {
+                entries[i] = new BackpackSnapshot.Entry(entry.getKey(), item, item.getShape());
+                sameEntries = false;
+            }
+            i++;
+        }
+        int goldAmount = goldAmount();
+        if (sameEntries && previous.getGoldAmount() == goldAmount
+                && previous.unlockedMask().equals(unlockedMask)) {
+            return previous;
+        }
+        var snapshot = new BackpackSnapshot(width, height,
+                shareOrCopy(previous == null ? null : previous.unlockedMask(), unlockedMask),
+                shareOrCopy(previous == null ? null : previous.occupiedMask(), occupiedMask),
+                shareOrCopy(previous == null ? null : previous.anchorMask(), anchorMask),
+                sameEntries ? previous.entryArray() : entries, goldAmount);
+        lastSnapshot = snapshot;
+        return snapshot;
+    }
+
+    /**
+     * Returns the mask of the previous snapshot if it still matches the current
+     * mask, or a copy of the current mask.
+     */
+    private static CellMask shareOrCopy(CellMask previous, CellMask current) {
+        return previous != null && previous.equals(current) ? previous : current.copy();
+    }
+
+    /**
+     * Puts the backpack back in the state of a snapshot: unlocked cells, items
+     * with their shape and anchor, and gold amount.
+     * 
+     * @param snapshot the snapshot to restore, taken from a backpack of the same
+     *                 size
+     */
+    public void restore(BackpackSnapshot snapshot) {
+        Objects.requireNonNull(snapshot, "snapshot cannot be null");
+        if (snapshot.getWidth() != width || snapshot.getHeight() != height) {
+            throw new IllegalArgumentException("snapshot must have the size of the backpack");
+        }
+        items.clear();
+        Arrays.fill(cellItems, null);
+        Arrays.fill(cellAnchors, null);
+        unlockedMask.copyFrom(snapshot.unlockedMask());
+        occupiedMask.copyFrom(snapshot.occupiedMask());
+        anchorMask.copyFrom(snapshot.anchorMask());
+        rebuildFrontier();
+        mana = 0;
+        gold = null;
+        for (var entry : snapshot.entryArray()) {
+            var item = entry.item();
+            item.setShape(entry.shape());
+            items.put(entry.anchor(), item);
+            indexCells(entry.shape(), entry.anchor(), item);
+            mana += item.getManaProvided();
+            if (gold == null) {
+                gold = asGold(item);
+            }
+        }
+        if (gold != null) {
+            gold.setAmount(snapshot.getGoldAmount());
+        }
+        lastSnapshot = snapshot;
+        assert countersMatchItems() : "mana or gold out of sync after restore";
+    }
+
+    /**
+     * Read-only set of positions backed by one of the occupancy masks.
+     */
+    private final class CellView extends AbstractSet<Position> {
+        private final CellMask mask;
+
+        private CellView(CellMask mask) {
+            this.mask = mask;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof Position pos && pos.checkBounds(width, height) && mask.get(indexOf(pos.x(), pos.y()));
+        }
+
+        @Override
+        public int size() {
+            return mask.cardinality();
+        }
+
+        @Override
+        public Iterator<Position> iterator() {
+            return new Iterator<>() {
+                private int next = mask.nextSetBit(0);
+
+                @Override
+                public boolean hasNext() {
+                    return next >= 0;
+                }
+
+                @Override
+                public Position next() {
+                    if (next < 0) {
+                        throw new NoSuchElementException();
+                    }
+                    var pos = Position.of(next % width, next / width);
+                    next = mask.nextSetBit(next + 1);
+                    return pos;
+                }
+            };
+        }
+    }
 }
@@ -0,0 +1,328 @@
+package fr.uge.backpackhero.model.item;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import fr.uge.backpackhero.model.level.Position;
+
+/**
+ * Undo/redo log of the edits made to a {@link Backpack}.
+ * Edits made through the history (place, remove, move, rotate and unlock) are
+ * applied to the backpack and recorded as three ints: the kind of edit and two
+ * cell indexes or counts, plus the item for places and removals. Each edit
+ * knows its inverse, so undoing never copies the backpack.
+ * Several edits can be grouped in a transaction, which is then undone and
+ * redone as a unit, or rolled back at once.
+ * Edits made to the backpack without the history may prevent an undo; the log
+ * is then cleared.
+ *
+ */
+public final class BackpackHistory {
+
+    private static final int PLACE = 0; // a: anchor, b: orientation of the shape
+    private static final int REMOVE = 1; // a: anchor, b: orientation of the shape
+    private static final int MOVE = 2; // a: from anchor, b: to anchor
+    private static final int ROTATE = 3; // a: anchor, b: quarter turns clockwise
+    private static final int UNLOCK = 4; // a: cell
+    private static final int KIND_MASK = 0xFF;
+    /** Set on the edits that belong to the same unit as the edit before them. */
+    private static final int GROUPED = 1 << 8;
+
+    private final Backpack backpack;
+    private int[] log = new int[3 * 16]; // kind, a and b of each edit
+    private Item[] logItems = new Item[16]; // item of each edit, null for moves, rotations and unlocks
+    private int size; // number of applied edits
+    private int top; // number of recorded edits, the ones past size can be redone
+    private int transactionStart = -1; // size when the open transaction began, -1 if none
+
+    /**
+     * Creates an empty history for a backpack.
+     *
+     * @param backpack the backpack to edit
+     */
+    public BackpackHistory(Backpack backpack) {
+        this.backpack = Objects.requireNonNull(backpack, "backpack cannot be null");
+    }
+
+    /**
+     * Places an item in the backpack and records it.
+     *
+     * @param item   the item to place
+     * @param anchor the anchor position of the item
+     * @return true if the item was placed, false otherwise
+     */
+    public boolean place(Item item, Position anchor) {
+        if (!backpack.place(item, anchor)) {
+            return false;
+        }
+        record(PLACE, indexOf(anchor), item.getShape().getOrientation(), item);
+        return true;
+    }
+
+    /**
+     * Removes the item at an anchor position and records it.
+     *
+     * @param anchor the anchor position of the item
+     * @return the removed item, or null if there was no item at this anchor
+     */
+    public Item remove(Position anchor) {
+        var item = backpack.remove(anchor);
+        if (item != null) {
+            record(REMOVE, indexOf(anchor), item.getShape().getOrientation(), item);
+        }
+        return item;
+    }
+
+    /**
+     * Moves an item to a new anchor position and records it.
+     *
+     * @param fromAnchor the current anchor position of the item
+     * @param toAnchor   the new anchor position of the item
+     * @return true if the item was moved, false otherwise
+     */
+    public boolean move(Position fromAnchor, Position toAnchor) {
+        if (!backpack.move(fromAnchor, toAnchor)) {
+            return false;
+        }
+        record(MOVE, indexOf(fromAnchor), indexOf(toAnchor), null);
+        return true;
+    }
+
+    /**
+     * Rotates the item at an anchor position by 90 degrees clockwise and records
+     * it.
+     *
+     * @param anchor the anchor position of the item
+     * @return true if the item was rotated, false otherwise
+     */
+    public boolean rotate(Position anchor) {
+        if (!backpack.rotateItem(anchor)) {
+            return false;
+        }
+        record(ROTATE, indexOf(anchor), 1, null);
+        return true;
+    }
+
+    /**
+     * Unlocks a cell of the backpack and records it.
+     *
+     * @param pos the cell to unlock
+     * @return true if the cell was unlocked, false otherwise
+     */
+    public boolean unlock(Position pos) {
+        if (!backpack.unlockCell(pos)) {
+            return false;
+        }
+        record(UNLOCK, indexOf(pos), 0, null);
+        return true;
+    }
+
+    /**
+     * Checks if there is an edit to undo.
+     *
+     * @return true if undo can be called
+     */
+    public boolean canUndo() {
+        return size > 0 && transactionStart < 0;
+    }
+
+    /**
+     * Checks if there is an undone edit to redo.
+     *
+     * @return true if redo can be called
+     */
+    public boolean canRedo() {
+        return top > size && transactionStart < 0;
+    }
+
+    /**
+     * Undoes the last edit, or the last transaction as a whole.
+     * If the backpack was changed outside of the history and the edit cannot be
+     * undone, the backpack is left as it was and the history is cleared.
+     *
+     * @return true if something was undone, false otherwise
+     */
+    public boolean undo() {
+        checkNoTransaction();
+        if (size == 0) {
+            return false;
+        }
+        int end = size;
+        int start = end - 1;
+        while (start > 0 && (log[3 * start] & GROUPED) != 0) {
+            start--;
+        }
+        if (!undoTo(start)) {
+            redoTo(end);
+            clear();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Redoes the last undone edit, or the last undone transaction as a whole.
+     * If the backpack was changed outside of the history and the edit cannot be
+     * redone, the backpack is left as it was and the history is cleared.
+     *
+     * @return true if something was redone, false otherwise
+     */
+    public boolean redo() {
+        checkNoTransaction();
+        if (top == size) {
+            return false;
+        }
+        int start = size;
+        int end = start + 1;
+        while (end < top && (log[3 * end] & GROUPED) != 0) {
+            end++;
+        }
+        if (!redoTo(end)) {
+            undoTo(start);
+            clear();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Starts a transaction: the edits made until {@link #commit()} are undone as a
+     * unit, and can all be cancelled with {@link #rollback()}.
+     */
+    public void begin() {
+        checkNoTransaction();
+        transactionStart = size;
+    }
+
+    /**
+     * Ends the open transaction, keeping its edits.
+     */
+    public void commit() {
+        checkTransaction();
+        transactionStart = -1;
+    }
+
+    /**
+     * Ends the open transaction, undoing all its edits.
+     */
+    public void rollback() {
+        checkTransaction();
+        // The edits of a transaction directly follow each other, so they can always be undone
+        var undone = undoTo(transactionStart);
+        assert undone : "rollback of a transaction failed";
+        top = size;
+        transactionStart = -1;
+    }
+
+    /**
+     * Forgets every recorded edit.
+     */
+    public void clear() {
+        size = 0;
+        top = 0;
+        transactionStart = -1;
+        Arrays.fill(logItems, null);
+    }
+
+    private void checkNoTransaction() {
+        if (transactionStart >= 0) {
+            throw new IllegalStateException("a transaction is open");
+        }
+    }
+
+    private void checkTransaction() {
+        if (transactionStart < 0) {
+            throw new IllegalStateException("no transaction is open");
+        }
+    }
+
+    private void record(int kind, int a, int b, Item item) {
+        if (size == logItems.length) {
+            log = Arrays.copyOf(log, 6 * size);
+            logItems = Arrays.copyOf(logItems, 2 * size);
+        }
+        Arrays.fill(logItems, size, top, null);
+        boolean grouped = transactionStart >= 0 && size > transactionStart;
+        log[3 * size] = grouped ? kind | GROUPED : kind;
+        log[3 * size + 1] = a;
+        log[3 * size + 2] = b;
+        logItems[size] = item;
+        size++;
+        top = size;
+    }
+
+    /**
+     * Undoes the edits until size is the given one; stops at the first edit that
+     * cannot be undone.
+     */
+    private boolean undoTo(int target) {
+        while (size > target) {
+            if (!apply(size - 1, false)) {
+                return false;
+            }
+            size--;
+        }
+        return true;
+    }
+
+    /**
+     * Redoes the edits until size is the given one; stops at the first edit that
+     * cannot be redone.
+     */
+    private boolean redoTo(int target) {
+        while (size < target) {
+            if (!apply(size, true)) {
+                return false;
+            }
+            size++;
+        }
+        return true;
+    }
+
+    /**
+     * Applies an edit of the log, or its inverse.
+     */
+    private boolean apply(int entry, boolean forward) {
+        int kind = log[3 * entry] & KIND_MASK;
+        var a = positionOf(log[3 * entry + 1]);
+        int b = log[3 * entry + 2];
+        var item = logItems[entry];
+        return switch (kind) {
+            case PLACE -> forward ? placeOriented(item, a, b) : removeIfAt(item, a);
+            case REMOVE -> forward ? removeIfAt(item, a) : placeOriented(item, a, b);
+            case MOVE -> forward ? backpack.move(a, positionOf(b)) : backpack.move(positionOf(b), a);
+            case ROTATE -> backpack.rotateItem(a, forward ? b : -b);
+            case UNLOCK -> forward ? backpack.unlockCell(a) : backpack.lockCell(a);
+            default -> throw new AssertionError("unknown edit " + kind);
+        };
+    }
+
+    /**
+     * Places an item with the orientation its shape had when the edit was
+     * recorded; the item keeps its shape if it does not fit.
+     */
+    private boolean placeOriented(Item item, Position anchor, int orientation) {
+        var shape = item.getShape();
+        item.setShape(shape.rotate(orientation - shape.getOrientation()));
+        if (!backpack.place(item, anchor)) {
+            item.setShape(shape);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Removes an item if it is still anchored at the given position.
+     */
+    private boolean removeIfAt(Item item, Position anchor) {
+        return backpack.getItems().get(anchor) == item && backpack.remove(anchor) != null;
+    }
+
+    private int indexOf(Position pos) {
+        return pos.y() * backpack.getWidth() + pos.x();
+    }
+
+    private Position positionOf(int index) {
+        return Position.of(index % backpack.getWidth(), index / backpack.getWidth());
+    }
+}
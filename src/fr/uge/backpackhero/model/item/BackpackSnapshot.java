@@ -0,0 +1,173 @@
+package fr.uge.backpackhero.model.item;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import fr.uge.backpackhero.model.level.Position;
+
+/**
+ * An immutable copy of the content of a {@link Backpack}, created by
+ * {@link Backpack#snapshot()} and put back with
+ * {@link Backpack#restore(BackpackSnapshot)}.
+ * A snapshot stores the cell masks of the backpack and a small array of
+ * entries (item, shape and anchor); the shape is captured because items can
+ * change shape after the snapshot is taken. Snapshots taken one after the other
+ * share every mask and entry that did not change, so deriving a snapshot after
+ * one move costs O(items) and allocates little.
+ *
+ */
+public final class BackpackSnapshot {
+
+    /**
+     * An item of the snapshot with the shape it had and where it was anchored.
+     *
+     * @param anchor the anchor position of the item
+     * @param item   the item
+     * @param shape  the shape of the item when the snapshot was taken
+     */
+    public record Entry(Position anchor, Item item, Shape shape) {
+
+        /**
+         * Creates a new Entry.
+         *
+         * @param anchor the anchor position of the item
+         * @param item   the item
+         * @param shape  the shape of the item when the snapshot was taken
+         */
+        public Entry {
+            Objects.requireNonNull(anchor, "anchor cannot be null");
+            Objects.requireNonNull(item, "item cannot be null");
+            Objects.requireNonNull(shape, "shape cannot be null");
+        }
+    }
+
+    private final int width;
+    private final int height;
+    // The masks are never modified once the snapshot is built, so they can be
+    // shared with other snapshots
+    private final CellMask unlocked;
+    private final CellMask occupied;
+    private final CellMask anchors;
+    private final Entry[] entries;
+    private final int goldAmount;
+
+    BackpackSnapshot(int width, int height, CellMask unlocked, CellMask occupied, CellMask anchors, Entry[] entries,
+            int goldAmount) {
+        this.width = width;
+        this.height = height;
+        this.unlocked = unlocked;
+        this.occupied = occupied;
+        this.anchors = anchors;
+        this.entries = entries;
+        this.goldAmount = goldAmount;
+    }
+
+    /**
+     * Returns the width of the backpack.
+     *
+     * @return the width of the backpack
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the backpack.
+     *
+     * @return the height of the backpack
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the items of the snapshot.
+     *
+     * @return an unmodifiable list of the entries of the snapshot
+     */
+    public List<Entry> entries() {
+        return List.of(entries);
+    }
+
+    /**
+     * Returns the number of items of the snapshot.
+     *
+     * @return the number of items
+     */
+    public int getItemCount() {
+        return entries.length;
+    }
+
+    /**
+     * Returns the amount of the gold stack of the backpack.
+     *
+     * @return the amount of gold, 0 if there was no gold stack
+     */
+    public int getGoldAmount() {
+        return goldAmount;
+    }
+
+    /**
+     * Checks if a cell was unlocked.
+     *
+     * @param pos the position to check
+     * @return true if the cell was unlocked, false otherwise
+     */
+    public boolean isUnlocked(Position pos) {
+        Objects.requireNonNull(pos, "pos cannot be null");
+        return pos.checkBounds(width, height) && unlocked.get(pos.y() * width + pos.x());
+    }
+
+    /**
+     * Checks if a cell was covered by an item.
+     *
+     * @param pos the position to check
+     * @return true if the cell was occupied, false otherwise
+     */
+    public boolean isOccupied(Position pos) {
+        Objects.requireNonNull(pos, "pos cannot be null");
+        return pos.checkBounds(width, height) && occupied.get(pos.y() * width + pos.x());
+    }
+
+    /**
+     * Returns the cells that were unlocked and not occupied, as a new mask
+     * indexed by {@code y * width + x}.
+     *
+     * @return a mask of the free cells
+     */
+    public CellMask getFreeCells() {
+        var free = unlocked.copy();
+        free.andNot(occupied);
+        return free;
+    }
+
+    CellMask unlockedMask() {
+        return unlocked;
+    }
+
+    CellMask occupiedMask() {
+        return occupied;
+    }
+
+    CellMask anchorMask() {
+        return anchors;
+    }
+
+    /**
+     * Returns the entry at the given index of the entry array, or null past its
+     * end; lets the backpack reuse unchanged entries.
+     */
+    Entry entryAt(int index) {
+        return index < entries.length ? entries[index] : null;
+    }
+
+    Entry[] entryArray() {
+        return entries;
+    }
+
+    @Override
+    public String toString() {
+        return "BackpackSnapshot " + width + "x" + height + " " + Arrays.toString(entries);
+    }
+}
@@ -0,0 +1,298 @@
+package fr.uge.backpackhero.model.item;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A fixed-size set of grid cells stored as a bitmask.
+ * Cell {@code (x, y)} of a grid of width {@code w} is stored at bit
+ * {@code y * w + x}. Grids of up to 64 cells fit in a single {@code long};
+ * bigger grids use as many words as needed.
+ * All operations work on primitives and never allocate, which is what makes
+ * placement checks in the backpack cheap.
+ *
+ */
+public final class CellMask {
+
+    private final int size;
+    private final long[] words;
+
+    /**
+     * Creates a new empty mask able to hold the given number of cells.
+     *
+     * @param size the number of cells of the mask
+     */
+    public CellMask(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size must be positive");
+        }
+        this.size = size;
+        this.words = new long[(size + 63) >>> 6];
+    }
+
+    /**
+     * Returns the number of cells this mask can hold.
+     *
+     * @return the number of cells of the mask
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks if the cell at the given index is set.
+     *
+     * @param index the index of the cell
+     * @return true if the cell is set, false otherwise
+     */
+    public boolean get(int index) {
+        Objects.checkIndex(index, size);
+        return (words[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Sets the cell at the given index.
+     *
+     * @param index the index of the cell
+     */
+    public void set(int index) {
+        Objects.checkIndex(index, size);
+        words[index >>> 6] |= 1L << index;
+    }
+
+    /**
+     * Clears the cell at the given index.
+     *
+     * @param index the index of the cell
+     */
+    public void clear(int index) {
+        Objects.checkIndex(index, size);
+        words[index >>> 6] &= ~(1L << index);
+    }
+
+    /**
+     * Returns up to 64 consecutive cells starting at the given index, packed in a
+     * long (bit 0 is the cell at {@code index}).
+     * Cells past the end of the mask read as unset.
+     *
+     * @param index  the index of the first cell
+     * @param length the number of cells to read, between 1 and 64
+     * @return the cells packed in a long
+     */
+    public long window(int index, int length) {
+        Objects.checkIndex(index, size);
+        checkLength(length);
+        int word = index >>> 6;
+        int offset = index & 63;
+        long bits = words[word] >>> offset;
+        if (offset != 0 && offset + length > 64 && word + 1 < words.length) {
+            bits |= words[word + 1] << (64 - offset);
+        }
+        return length == 64 ? bits : bits & ((1L << length) - 1);
+    }
+
+    /**
+     * Sets every cell whose bit is set in {@code bits}, bit 0 being the cell at
+     * {@code index}.
+     *
+     * @param index the index of the first cell
+     * @param bits  the cells to set
+     */
+    public void orWindow(int index, long bits) {
+        Objects.checkIndex(index, size);
+        int word = index >>> 6;
+        int offset = index & 63;
+        words[word] |= bits << offset;
+        if (offset != 0 && word + 1 < words.length) {
+            words[word + 1] |= bits >>> (64 - offset);
+        }
+    }
+
+    /**
+     * Clears every cell whose bit is set in {@code bits}, bit 0 being the cell at
+     * {@code index}.
+     *
+     * @param index the index of the first cell
+     * @param bits  the cells to clear
+     */
+    public void andNotWindow(int index, long bits) {
+        Objects.checkIndex(index, size);
+        int word = index >>> 6;
+        int offset = index & 63;
+        words[word] &= ~(bits << offset);
+        if (offset != 0 && word + 1 < words.length) {
+            words[word + 1] &= ~(bits >>> (64 - offset));
+        }
+    }
+
+    /**
+     * Returns the index of the first set cell at or after {@code from}.
+     *
+     * @param from the index to start searching from
+     * @return the index of the next set cell, or -1 if there is none
+     */
+    public int nextSetBit(int from) {
+        if (from < 0) {
+            throw new IndexOutOfBoundsException("from cannot be negative");
+        }
+        if (from >= size) {
+            return -1;
+        }
+        int word = from >>> 6;
+        long bits = words[word] & (-1L << from);
+        while (true) {
+            if (bits != 0) {
+                int index = (word << 6) + Long.numberOfTrailingZeros(bits);
+                return index < size ? index : -1;
+            }
+            if (++word == words.length) {
+                return -1;
+            }
+            bits = words[word];
+        }
+    }
+
+    /**
+     * Returns the number of set cells.
+     *
+     * @return the number of set cells
+     */
+    public int cardinality() {
+        int count = 0;
+        for (var word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * Clears every cell of the mask.
+     */
+    public void clearAll() {
+        Arrays.fill(words, 0L);
+    }
+
+    /**
+     * Clears every cell of this mask that is set in another mask of the same
+     * size.
+     *
+     * @param other the cells to clear
+     */
+    public void andNot(CellMask other) {
+        checkSameSize(other);
+        for (int i = 0; i < words.length; i++) {
+            words[i] &= ~other.words[i];
+        }
+    }
+
+    /**
+     * Keeps only the cells of this mask whose cell {@code shift} places further is
+     * set in another mask of the same size: cell {@code i} stays set only if
+     * cell {@code i + shift} of {@code other} is set. Cells shifted in from past
+     * the end read as unset.
+     *
+     * @param other the mask to intersect with
+     * @param shift the number of cells other is shifted towards index 0, not
+     *              negative
+     */
+    public void andShifted(CellMask other, int shift) {
+        checkSameSize(other);
+        if (shift < 0) {
+            throw new IllegalArgumentException("shift cannot be negative");
+        }
+        int wordShift = shift >>> 6;
+        int bitShift = shift & 63;
+        for (int i = 0; i < words.length; i++) {
+            int source = i + wordShift;
+            long bits = source < words.length ? other.words[source] >>> bitShift : 0L;
+            if (bitShift != 0 && source + 1 < words.length) {
+                bits |= other.words[source + 1] << (64 - bitShift);
+            }
+            words[i] &= bits;
+        }
+    }
+
+    /**
+     * Replaces the content of this mask by the anchors where a shape can be put
+     * in a grid of the given width, every cell of the shape landing on a set
+     * cell of {@code free}. The anchors are computed for all cells at once by
+     * intersecting {@code free} shifted by the offset of each cell of the shape.
+     *
+     * @param free      the cells the shape may cover, a mask of the same size
+     * @param shape     the shape to put
+     * @param gridWidth the width of the grid, which must divide the size
+     * @return false if the shape is too big for the grid, which leaves this mask
+     *         empty
+     */
+    public boolean fitAnchors(CellMask free, Shape shape, int gridWidth) {
+        checkSameSize(free);
+        Objects.requireNonNull(shape, "shape cannot be null");
+        if (gridWidth <= 0 || size % gridWidth != 0) {
+            throw new IllegalArgumentException("gridWidth must divide the size of the mask");
+        }
+        clearAll();
+        int columns = gridWidth - shape.getWidth() + 1;
+        int rows = size / gridWidth - shape.getHeight() + 1;
+        if (columns <= 0 || rows <= 0) {
+            return false;
+        }
+        // Anchors keeping the shape inside the grid, so the shifts never wrap a row
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < columns; x += 64) {
+                int length = Math.min(64, columns - x);
+                orWindow(y * gridWidth + x, length == 64 ? -1L : (1L << length) - 1);
+            }
+        }
+        for (int row = 0; row < shape.getHeight(); row++) {
+            for (long bits = shape.getRowMask(row); bits != 0; bits &= bits - 1) {
+                andShifted(free, row * gridWidth + Long.numberOfTrailingZeros(bits));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Replaces the content of this mask by the content of another mask of the
+     * same size.
+     *
+     * @param other the mask to copy
+     */
+    public void copyFrom(CellMask other) {
+        checkSameSize(other);
+        System.arraycopy(other.words, 0, words, 0, words.length);
+    }
+
+    /**
+     * Returns a copy of this mask.
+     *
+     * @return a new mask with the same cells set
+     */
+    public CellMask copy() {
+        var copy = new CellMask(size);
+        System.arraycopy(words, 0, copy.words, 0, words.length);
+        return copy;
+    }
+
+    private void checkSameSize(CellMask other) {
+        Objects.requireNonNull(other, "other cannot be null");
+        if (other.size != size) {
+            throw new IllegalArgumentException("masks must have the same size");
+        }
+    }
+
+    private static void checkLength(int length) {
+        if (length < 1 || length > 64) {
+            throw new IllegalArgumentException("length must be between 1 and 64");
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof CellMask other && size == other.size && Arrays.equals(words, other.words);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * size + Arrays.hashCode(words);
+    }
+}
@@ -0,0 +1,41 @@
+package fr.uge.backpackhero.model.item;
+
+import java.util.Objects;
+
+import fr.uge.backpackhero.model.level.Position;
+
+/**
+ * Represents where an item should go in the backpack: the anchor position and
+ * the number of quarter turns clockwise to apply to its current shape first.
+ * 
+ * @param item     the item to place
+ * @param anchor   the anchor position of the item in the backpack
+ * @param rotation the number of quarter turns clockwise, between 0 and 3
+ * 
+ */
+public record Placement(Item item, Position anchor, int rotation) {
+
+    /**
+     * Creates a new Placement.
+     * 
+     * @param item     the item to place
+     * @param anchor   the anchor position of the item in the backpack
+     * @param rotation the number of quarter turns clockwise, between 0 and 3
+     */
+    public Placement {
+        Objects.requireNonNull(item, "item cannot be null");
+        Objects.requireNonNull(anchor, "anchor cannot be null");
+        if (rotation < 0 || rotation > 3) {
+            throw new IllegalArgumentException("rotation must be between 0 and 3");
+        }
+    }
+
+    /**
+     * Returns the shape the item will have once placed.
+     * 
+     * @return the rotated shape of the item
+     */
+    public Shape shape() {
+        return item.getShape().rotate(rotation);
+    }
+}
@@ -1,6 +1,8 @@
 package fr.uge.backpackhero.model.item;
 
 import fr.uge.backpackhero.model.level.Position;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 import java.util.HashSet;
@@ -10,23 +12,104 @@ import java.util.Objects;
  * Represents the shape of an item in the backpack.
  * The shape is defined by a list of relative positions that the item occupies.
  * The shape can be rotated to fit different orientations in the backpack.
- * 
- * @param cells the list of relative positions that define the shape
+ * <p>
+ * The four orientations of a shape are computed once when the shape is created
+ * and shared between them, so rotating a shape is a table lookup that always
+ * returns the same instance. Each orientation also caches its width, height and
+ * one bitmask per row, which is what the backpack uses to test placements.
  * 
  */
-public record Shape(List<Position> cells) {
+public final class Shape {
+
+    /** The maximum width of a shape, so that a row fits in a long. */
+    private static final int MAX_WIDTH = 64;
+
+    private final List<Position> cells;
+    private final int width;
+    private final int height;
+    private final long[] rowMasks; // bit x of rowMasks[y] is set when (x, y) is a cell
+    private final Shape[] orientations; // shared by the four rotations of the shape
+    private final int orientation; // index of this shape in orientations
 
     /**
      * Creates a new Shape with the given list of cells.
+     * Coordinates must be non-negative and the shape cannot be wider than 64
+     * cells. The cells are shifted so that the minimum x and y coordinates are
+     * 0, like the cells of the rotations, so the first row and the first column
+     * of a shape are never empty.
      * 
      * @param cells the list of relative positions that define the shape
      */
-    public Shape {
+    public Shape(List<Position> cells) {
+        this(normalizeCells(checkCells(cells)), new Shape[4], 0);
+        for (int i = 1; i < orientations.length; i++) {
+            new Shape(rotateCells(orientations[i - 1].cells), orientations, i);
+        }
+    }
+
+    private Shape(List<Position> cells, Shape[] orientations, int orientation) {
+        int maxX = 0;
+        int maxY = 0;
+        for (var cell : cells) {
+            maxX = Math.max(maxX, cell.x());
+            maxY = Math.max(maxY, cell.y());
+        }
+        if (maxX >= MAX_WIDTH) {
+            throw new IllegalArgumentException("Shape cannot be wider than " + MAX_WIDTH + " cells");
+        }
+        this.cells = cells;
+        this.width = maxX + 1;
+        this.height = maxY + 1;
+        this.rowMasks = new long[height];
+        for (var cell : cells) {
+            rowMasks[cell.y()] |= 1L << cell.x();
+        }
+        this.orientations = orientations;
+        this.orientation = orientation;
+        orientations[orientation] = this;
+    }
+
+    private static List<Position> checkCells(List<Position> cells) {
         Objects.requireNonNull(cells, "cells cannot be null");
         if (cells.isEmpty()) {
             throw new IllegalArgumentException("Shape must have at least one cell");
         }
-        cells = List.copyOf(cells);
+        for (var cell : cells) {
+            if (cell.x() < 0 || cell.y() < 0) {
+                throw new IllegalArgumentException("Shape cells cannot have negative coordinates");
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * Shifts a list of cells so that the minimum x and y coordinates are at
+     * (0, 0).
+     * 
+     * @param cells the list of cells to shift
+     * @return the normalized list of cells
+     */
+    private static List<Position> normalizeCells(List<Position> cells) {
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        for (var cell : cells) {
+            minX = Math.min(minX, cell.x());
+            minY = Math.min(minY, cell.y());
+        }
+        var normalized = new ArrayList<Position>(cells.size());
+        for (var cell : cells) {
+            normalized.add(Position.of(cell.x() - minX, cell.y() - minY));
+        }
+        return List.copyOf(normalized);
+    }
+
+    /**
+     * Returns the list of relative positions that define the shape.
+     * 
+     * @return the list of relative positions that define the shape
+     */
+    public List<Position> cells() {
+        return cells;
     }
 
     /** A single 1x1 cell shape. */
@@ -114,68 +197,80 @@ public record Shape(List<Position> cells) {
         Objects.requireNonNull(anchor, "anchor cannot be null");
         var result = new HashSet<Position>();
         for (var cell : cells) {
-            result.add(new Position(anchor.x() + cell.x(), anchor.y() + cell.y()));
+            result.add(Position.of(anchor.x() + cell.x(), anchor.y() + cell.y()));
         }
         return result;
     }
 
     /**
-     * Normalizes a list of positions to create a Shape.
+     * Rotates a list of cells by 90 degrees and normalizes the result.
      * The normalization process shifts the positions so that the minimum x and y
      * coordinates are at (0, 0).
-     * It can be useful after rotating a shape to ensure the shape is properly
-     * aligned.
      * 
-     * @param positions the list of positions to normalize
-     * @return a new Shape with normalized positions
+     * @param cells the list of cells to rotate
+     * @return the rotated and normalized list of cells
      */
-    private static Shape normalize(List<Position> positions) {
-        Objects.requireNonNull(positions, "positions cannot be null");
-        if (positions.isEmpty()) {
-            throw new IllegalArgumentException("positions cannot be empty");
+    private static List<Position> rotateCells(List<Position> cells) {
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        for (var cell : cells) {
+            minX = Math.min(minX, cell.y());
+            minY = Math.min(minY, -cell.x());
+        }
+        var rotated = new ArrayList<Position>(cells.size());
+        for (var cell : cells) {
+            rotated.add(Position.of(cell.y() - minX, -cell.x() - minY));
         }
-        int minX = positions.stream()
-                .mapToInt(Position::x)
-                .min()
-                .orElse(0);
-        int minY = positions.stream()
-                .mapToInt(Position::y)
-                .min()
-                .orElse(0);
-        var normalized = positions.stream()
-                .map(p -> new Position(p.x() - minX, p.y() - minY))
-                .toList();
-        return new Shape(normalized);
+        return List.copyOf(rotated);
+    }
+
+    /**
+     * Returns this shape rotated by the given number of quarter turns clockwise.
+     * The result is looked up in the precomputed orientation table, so no shape
+     * is created.
+     * 
+     * @param quarterTurns the number of quarter turns, can be negative
+     * @return the rotated shape
+     */
+    public Shape rotate(int quarterTurns) {
+        return orientations[(orientation + quarterTurns) & 3];
     }
 
     /**
      * Rotates the shape 90 degrees clockwise.
      * 
-     * @return a new Shape rotated 90 degrees clockwise
+     * @return the Shape rotated 90 degrees clockwise
      */
     public Shape rotate90() {
-        var rotated = cells.stream()
-                .map(p -> new Position(p.y(), -p.x()))
-                .toList();
-        return normalize(rotated);
+        return rotate(1);
     }
 
     /**
      * Rotates the shape 180 degrees clockwise.
      * 
-     * @return a new Shape rotated 180 degrees clockwise
+     * @return the Shape rotated 180 degrees clockwise
      */
     public Shape rotate180() {
-        return rotate90().rotate90();
+        return rotate(2);
     }
 
     /**
      * Rotates the shape 270 degrees clockwise.
      * 
-     * @return a new Shape rotated 270 degrees clockwise
+     * @return the Shape rotated 270 degrees clockwise
      */
     public Shape rotate270() {
-        return rotate90().rotate90().rotate90();
+        return rotate(3);
+    }
+
+    /**
+     * Returns the index of this orientation in the orientation table, that is
+     * the number of quarter turns from the shape it was created from.
+     * 
+     * @return the orientation index, between 0 and 3
+     */
+    public int getOrientation() {
+        return orientation;
     }
 
     /**
@@ -184,10 +279,7 @@ public record Shape(List<Position> cells) {
      * @return the width of the shape
      */
     public int getWidth() {
-        return cells.stream()
-                .mapToInt(Position::x)
-                .max()
-                .orElse(0) + 1;
+        return width;
     }
 
     /**
@@ -196,10 +288,79 @@ public record Shape(List<Position> cells) {
      * @return the height of the shape
      */
     public int getHeight() {
-        return cells.stream()
-                .mapToInt(Position::y)
-                .max()
-                .orElse(0) + 1;
+        return height;
+    }
+
+    /**
+     * Returns the number of cells of the shape.
+     * 
+     * @return the number of cells of the shape
+     */
+    public int getCellCount() {
+        return cells.size();
+    }
+
+    /**
+     * Returns the cells of a row of the shape as a bitmask, bit x being set when
+     * the cell (x, row) belongs to the shape.
+     * 
+     * @param row the row, between 0 and the height of the shape (excluded)
+     * @return the bitmask of the row
+     */
+    public long getRowMask(int row) {
+        return rowMasks[Objects.checkIndex(row, height)];
+    }
+
+    /**
+     * Checks if two shapes cover exactly the same cells, whatever the order of
+     * their cell lists. Two orientations of a symmetric shape cover the same
+     * cells.
+     * 
+     * @param other the shape to compare with
+     * @return true if both shapes cover the same cells
+     */
+    public boolean coversSameCells(Shape other) {
+        Objects.requireNonNull(other, "other cannot be null");
+        return width == other.width && height == other.height && Arrays.equals(rowMasks, other.rowMasks);
+    }
+
+    /**
+     * Checks if rotating this shape by a number of quarter turns covers the same
+     * cells as a smaller rotation, so that searches can skip it.
+     * 
+     * @param quarterTurns the number of quarter turns clockwise, between 0 and 3
+     * @return true if a smaller rotation gives the same cells
+     */
+    public boolean isRedundantRotation(int quarterTurns) {
+        Objects.checkIndex(quarterTurns, 4);
+        var rotated = rotate(quarterTurns);
+        for (int previous = 0; previous < quarterTurns; previous++) {
+            if (rotate(previous).coversSameCells(rotated)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Two shapes are equal if they have the same list of cells.
+     * 
+     * @param obj the object to compare with
+     * @return true if the object is a shape with the same cells
+     */
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof Shape shape && cells.equals(shape.cells);
+    }
+
+    /**
+     * Returns a hash code computed from the list of cells.
+     * 
+     * @return the hash code of the shape
+     */
+    @Override
+    public int hashCode() {
+        return cells.hashCode();
     }
 
     /**
@@ -212,7 +373,7 @@ public record Shape(List<Position> cells) {
         var sb = new StringBuilder();
         for (int y = 0; y < getHeight(); y++) {
             for (int x = 0; x < getWidth(); x++) {
-                if (cells.contains(new Position(x, y))) {
+                if ((rowMasks[y] & (1L << x)) != 0) {
                     sb.append("[X]");
                 } else {
                     sb.append("   ");
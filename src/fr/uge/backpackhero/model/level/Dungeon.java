@@ -3,8 +3,11 @@ package fr.uge.backpackhero.model.level;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Random;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
 
 import fr.uge.backpackhero.model.entity.Enemy;
 import fr.uge.backpackhero.model.item.Item;
@@ -22,24 +25,36 @@ public class Dungeon {
     private static final int HEIGHT = 5;
 
     private static final int ENEMY_COUNT = 3;
+    /** The largest number of enemies in one enemy room. */
+    public static final int MAX_ROOM_ENEMIES = 3;
     private static final int TREASURE_COUNT = 2;
 
     private final List<Floor> floors;
-    private final Random rng;
+    private final RandomGenerator rng;
 
     /**
      * Creates a new Dungeon with procedurally generated floors.
      */
     public Dungeon() {
+        this(new SplittableRandom());
+    }
+
+    /**
+     * Creates a new Dungeon whose floors are generated with the given random
+     * generator; the same sequence of random numbers gives the same dungeon.
+     * 
+     * @param rng the random generator of the floors
+     */
+    public Dungeon(RandomGenerator rng) {
         this.floors = new ArrayList<>();
-        this.rng = new Random();
+        this.rng = Objects.requireNonNull(rng, "rng cannot be null");
 
         for (int i = 0; i < FLOOR_COUNT; i++) {
             floors.add(createRandomFloor(i, rng));
         }
     }
 
-    private Floor createRandomFloor(int floorIndex, Random rng) {
+    private Floor createRandomFloor(int floorIndex, RandomGenerator rng) {
         Floor floor = new Floor(WIDTH, HEIGHT);
 
         List<Position> corridors = buildConnectedCorridors(rng);
@@ -53,14 +68,14 @@ public class Dungeon {
         return floor;
     }
 
-    private List<Position> buildConnectedCorridors(Random rng) {
+    private List<Position> buildConnectedCorridors(RandomGenerator rng) {
         var corridors = new ArrayList<Position>();
         var used = new HashSet<Position>();
 
         int x = 0;
         int y = 0;
 
-        Position start = new Position(0, 0);
+        Position start = Position.of(0, 0);
         corridors.add(start);
         used.add(start);
 
@@ -77,7 +92,7 @@ public class Dungeon {
                 x++;
             }
 
-            Position p = new Position(x, y);
+            Position p = Position.of(x, y);
             if (used.add(p)) {
                 corridors.add(p);
             }
@@ -92,7 +107,7 @@ public class Dungeon {
         return corridors;
     }
 
-    private void addSmallBranch(List<Position> corridors, HashSet<Position> used, Position base, Random rng) {
+    private void addSmallBranch(List<Position> corridors, HashSet<Position> used, Position base, RandomGenerator rng) {
         int len = 1 + rng.nextInt(3);
         int x = base.x();
         int y = base.y();
@@ -114,7 +129,7 @@ public class Dungeon {
                 return;
             }
 
-            Position p = new Position(nx, ny);
+            Position p = Position.of(nx, ny);
             if (used.add(p)) {
                 corridors.add(p);
             }
@@ -124,7 +139,7 @@ public class Dungeon {
         }
     }
 
-    private void placeSpecialRooms(Floor floor, List<Position> corridors, int floorIndex, Random rng) {
+    private void placeSpecialRooms(Floor floor, List<Position> corridors, int floorIndex, RandomGenerator rng) {
         Position exit = corridors.get(0);
         for (Position p : corridors) {
             if (p.x() > exit.x()) {
@@ -135,7 +150,7 @@ public class Dungeon {
 
         var free = new ArrayList<>(corridors);
         free.remove(exit);
-        free.remove(new Position(0, 0));
+        free.remove(Position.of(0, 0));
 
         // Merchant
         Position merchant = pickAndRemove(free, rng);
@@ -158,7 +173,7 @@ public class Dungeon {
         }
     }
 
-    private Position pickAndRemove(List<Position> list, Random rng) {
+    private Position pickAndRemove(List<Position> list, RandomGenerator rng) {
         return list.remove(rng.nextInt(list.size()));
     }
 
@@ -170,8 +185,27 @@ public class Dungeon {
         return 30;
     }
 
-    private List<Enemy> enemiesForFloor(int floorIndex, Random rng) {
-        int enemyCount = 1 + rng.nextInt(3); // 1 to 3 enemies
+    private List<Enemy> enemiesForFloor(int floorIndex, RandomGenerator rng) {
+        return enemiesForFloor(floorIndex, 1 + rng.nextInt(MAX_ROOM_ENEMIES));
+    }
+
+    /**
+     * Creates a group of enemies like the ones met in the enemy rooms of a floor.
+     * 
+     * @param floorIndex the index of the floor, floors after the last one use the
+     *                   enemies of the last floor
+     * @param enemyCount the number of enemies, from 1 to {@link #MAX_ROOM_ENEMIES}
+     * @return a new list of new enemies
+     * @throws IllegalArgumentException if the floor index or the number of enemies
+     *                                  is invalid
+     */
+    public static List<Enemy> enemiesForFloor(int floorIndex, int enemyCount) {
+        if (floorIndex < 0) {
+            throw new IllegalArgumentException("floorIndex cannot be negative");
+        }
+        if (enemyCount < 1 || enemyCount > MAX_ROOM_ENEMIES) {
+            throw new IllegalArgumentException("enemyCount must be between 1 and " + MAX_ROOM_ENEMIES);
+        }
 
         if (floorIndex == 0) {
             // Floor 0: Easy enemies
@@ -204,7 +238,8 @@ public class Dungeon {
     }
 
     private HashMap<Item, Integer> merchantStock(int floorIndex) {
-        var shop = new HashMap<Item, Integer>();
+        // Linked so that the shop lists its items in the same order for a given seed
+        var shop = new LinkedHashMap<Item, Integer>();
         var items = LootTables.generateLoot(floorIndex, 3, rng);
 
         for (var item : items) {
@@ -9,6 +9,34 @@ package fr.uge.backpackhero.model.level;
  */
 public record Position(int x, int y) {
 
+    /** Positions with both coordinates below this bound are cached by of. */
+    private static final int CACHE_SIZE = 128;
+    private static final Position[] CACHE = new Position[CACHE_SIZE * CACHE_SIZE];
+
+    /**
+     * Returns a position with the given coordinates.
+     * Positions of the range used by backpacks and floors are canonical
+     * instances, created once and shared, so that the code walking grids does
+     * not allocate; other positions are created on each call.
+     * 
+     * @param x the horizontal coordinate (column)
+     * @param y the vertical coordinate (row)
+     * @return a position with the given coordinates
+     */
+    public static Position of(int x, int y) {
+        if (x < 0 || y < 0 || x >= CACHE_SIZE || y >= CACHE_SIZE) {
+            return new Position(x, y);
+        }
+        int index = y * CACHE_SIZE + x;
+        var position = CACHE[index];
+        if (position == null) {
+            // Racing threads may both create it, which is harmless as records are immutable
+            position = new Position(x, y);
+            CACHE[index] = position;
+        }
+        return position;
+    }
+
     /**
      * Checks if the position is within the bounds of the specified width and
      * height.
@@ -3,7 +3,7 @@ package fr.uge.backpackhero.model.loot;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
-import java.util.Random;
+import java.util.random.RandomGenerator;
 
 import fr.uge.backpackhero.model.entity.Enemy;
 import fr.uge.backpackhero.model.item.Armor;
@@ -33,7 +33,7 @@ public final class LootTables {
    * @param rng        a random number generator
    * @return a list of random items
    */
-  public static List<Item> generateLoot(int floorIndex, int count, Random rng) {
+  public static List<Item> generateLoot(int floorIndex, int count, RandomGenerator rng) {
     Objects.requireNonNull(rng, "rng cannot be null");
     var loot = new ArrayList<Item>();
     for (int i = 0; i < count; i++) {
@@ -75,7 +75,7 @@ public final class LootTables {
    * @param rng        the random number generator
    * @return a random item appropriate for the floor
    */
-  public static Item rollLootItem(int floorIndex, Random rng) {
+  public static Item rollLootItem(int floorIndex, RandomGenerator rng) {
     Objects.requireNonNull(rng, "rng cannot be null");
     int r = rng.nextInt(100);
 
@@ -135,12 +135,13 @@ public final class LootTables {
    * 
    * @param enemies    the list of enemies from the combat
    * @param floorIndex the current floor index
+   * @param rng        the random number generator
    * @return a list of loot items
    */
-  public static List<Item> generateLootFromEnemies(List<Enemy> enemies, int floorIndex) {
+  public static List<Item> generateLootFromEnemies(List<Enemy> enemies, int floorIndex, RandomGenerator rng) {
     Objects.requireNonNull(enemies, "enemies cannot be null");
+    Objects.requireNonNull(rng, "rng cannot be null");
     var loot = new ArrayList<Item>();
-    var rng = new Random();
 
     for (var enemy : enemies) {
       if (!enemy.isAlive()) {